@@ -0,0 +1,61 @@
+package hudson.plugins.starteam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Writing and parsing <tt>changelog.xml</tt> with one entry per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ChangeLogBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int size;
+
+	private StarTeamChangeSet changeSet;
+	private byte[] changeLog;
+
+	@Setup
+	public void setUp() throws IOException {
+		changeSet = new StarTeamChangeSet();
+		Date date = new Date();
+		for (int i = 0; i < size; i++) {
+			changeSet.addChange(new StarTeamChangeLogEntry("File" + i + ".java", i % 7, date, "user" + (i % 20),
+					"Fix <issue> #" + (i / 10), i % 3 == 0 ? "added" : "change"));
+		}
+		changeLog = writeChangeLog().toByteArray();
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream writeChangeLog() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		StarTeamChangeLogBuilder.writeChangeLog(os, changeSet);
+		return os;
+	}
+
+	@Benchmark
+	public StarTeamChangeLogSet parse() throws IOException, SAXException {
+		return StarTeamChangeLogParser.parse(null, new ByteArrayInputStream(changeLog));
+	}
+}
@@ -0,0 +1,103 @@
+package hudson.plugins.starteam;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the sort-merge diff of {@link StarTeamFilePointDiff} with the map
+ * and set based comparison computeDifference used before. Both start from
+ * the lists of file points, as computeDifference does, so the tables are
+ * built inside the measured code. Run with <tt>-Dbenchmark=FilePointDiff</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FilePointDiffBenchmark {
+
+	@Param({ "1000", "10000", "100000", "500000", "1000000" })
+	public int size;
+
+	private List<StarTeamFilePoint> currentList;
+	private List<StarTeamFilePoint> historicList;
+
+	@Setup
+	public void setUp() {
+		currentList = SyntheticFilePoints.current(size);
+		historicList = SyntheticFilePoints.historic(size);
+	}
+
+	@Benchmark
+	public int sortMerge() {
+		StarTeamFilePointTable currentTable = StarTeamFilePointTable.of(currentList);
+		StarTeamFilePointTable historicTable = StarTeamFilePointTable.of(historicList);
+		final int[] events = new int[1];
+		StarTeamFilePointDiff.diff(currentTable, historicTable, new StarTeamFilePointDiff.Listener() {
+			public void added(int current) {
+				events[0]++;
+			}
+
+			public void removed(int historic) {
+				events[0]++;
+			}
+
+			public void changed(int current, int historic) {
+				events[0]++;
+			}
+
+			public void rolledBack(int current, int historic) {
+				events[0]++;
+			}
+		});
+		return events[0];
+	}
+
+	/**
+	 * The comparison as computeDifference did it before the sort-merge diff.
+	 */
+	@Benchmark
+	public int hashMapBaseline() {
+		Map<File, StarTeamFilePoint> starteamFilePointMap = new HashMap<File, StarTeamFilePoint>();
+		for (StarTeamFilePoint fp : currentList) {
+			starteamFilePointMap.put(fp.getFile(), fp);
+		}
+		Map<File, StarTeamFilePoint> historicFilePointMap = new HashMap<File, StarTeamFilePoint>();
+		for (StarTeamFilePoint fp : historicList) {
+			historicFilePointMap.put(fp.getFile(), fp);
+		}
+
+		Set<File> starteamOnly = new HashSet<File>(starteamFilePointMap.keySet());
+		starteamOnly.removeAll(historicFilePointMap.keySet());
+		Set<File> historicOnly = new HashSet<File>(historicFilePointMap.keySet());
+		historicOnly.removeAll(starteamFilePointMap.keySet());
+		Set<File> common = new HashSet<File>(starteamFilePointMap.keySet());
+		common.removeAll(starteamOnly);
+
+		int events = starteamOnly.size() + historicOnly.size();
+		for (File f : common) {
+			if (starteamFilePointMap.get(f).getRevisionNumber() != historicFilePointMap.get(f).getRevisionNumber()) {
+				events++;
+			}
+		}
+		return events;
+	}
+}
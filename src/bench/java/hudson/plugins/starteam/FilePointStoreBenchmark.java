@@ -0,0 +1,69 @@
+package hudson.plugins.starteam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing and reading the file points of a build, in memory so that the disk
+ * doesn't blur the numbers. The legacy CSV format is read for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FilePointStoreBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int size;
+
+	private List<StarTeamFilePoint> filePoints;
+	private byte[] stored;
+	private byte[] legacy;
+
+	@Setup
+	public void setUp() throws IOException {
+		filePoints = SyntheticFilePoints.historic(size);
+		stored = storeCollection().toByteArray();
+
+		StringBuilder csv = new StringBuilder();
+		for (StarTeamFilePoint fp : filePoints) {
+			csv.append(fp.getRevisionNumber()).append(',').append(fp.getFullfilepath()).append('\n');
+		}
+		legacy = csv.toString().getBytes("ISO-8859-1");
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream storeCollection() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		StarTeamFilePointFunctions.storeCollection(os, filePoints);
+		return os;
+	}
+
+	@Benchmark
+	public Collection<StarTeamFilePoint> loadCollection() throws IOException {
+		return StarTeamFilePointFunctions.loadCollection(new ByteArrayInputStream(stored));
+	}
+
+	@Benchmark
+	public Collection<StarTeamFilePoint> loadLegacyCollection() throws IOException {
+		return StarTeamFilePointFunctions.loadCollection(new ByteArrayInputStream(legacy));
+	}
+}
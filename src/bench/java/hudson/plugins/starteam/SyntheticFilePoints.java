@@ -0,0 +1,50 @@
+package hudson.plugins.starteam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File points of a made up view for the benchmarks: 50 files per directory,
+ * directories nested three levels deep.
+ */
+final class SyntheticFilePoints {
+
+	private SyntheticFilePoints() {
+	}
+
+	static String path(int i) {
+		int dir = i / 50;
+		return "/hudson/workspace/job/src/module" + (dir / 400) + "/pkg" + (dir / 20 % 20) + "/sub" + (dir % 20) + "/File" + i + ".java";
+	}
+
+	/**
+	 * @param size number of files
+	 * @return the file points of the last build
+	 */
+	static List<StarTeamFilePoint> historic(int size) {
+		List<StarTeamFilePoint> result = new ArrayList<StarTeamFilePoint>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(new StarTeamFilePoint(path(i), 1));
+		}
+		return result;
+	}
+
+	/**
+	 * @param size number of files of the last build
+	 * @return the file points of the view now: one file in a hundred has a
+	 *         new revision, one in two hundred was removed and as many added.
+	 */
+	static List<StarTeamFilePoint> current(int size) {
+		List<StarTeamFilePoint> result = new ArrayList<StarTeamFilePoint>(size);
+		for (int i = 0; i < size; i++) {
+			if (i % 200 == 7) {
+				continue;
+			}
+			result.add(new StarTeamFilePoint(path(i), i % 100 == 3 ? 2 : 1));
+		}
+		for (int i = size; i < size + size / 200; i++) {
+			result.add(new StarTeamFilePoint(path(i), 1));
+		}
+		return result;
+	}
+}
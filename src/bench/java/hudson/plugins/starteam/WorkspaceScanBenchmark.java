@@ -0,0 +1,63 @@
+package hudson.plugins.starteam;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Listing all files of a workspace, on one thread and in parallel. The files
+ * are created empty in the temporary directory; the largest tree needs a
+ * million inodes, pass <tt>-p size=...</tt> to JMH to leave it out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WorkspaceScanBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int size;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private File workspace;
+
+	@Setup
+	public void setUp() throws IOException {
+		workspace = File.createTempFile("starteam-bench", "");
+		workspace.delete();
+		for (int i = 0; i < size; i++) {
+			File f = new File(workspace, SyntheticFilePoints.path(i));
+			f.getParentFile().mkdirs();
+			f.createNewFile();
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workspace);
+	}
+
+	@Benchmark
+	public Collection<File> listAllFiles() {
+		return StarTeamWorkspaceScanner.listAllFiles(workspace, threads);
+	}
+}
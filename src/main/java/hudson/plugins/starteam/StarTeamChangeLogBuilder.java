@@ -4,23 +4,40 @@ import hudson.Util;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.nio.charset.Charset;
+import java.io.StringWriter;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Builds <tt>changelog.xml</tt> for {@link StarTeamSCM}.
  * 
  * Remove use of deprecated classes.
+ * <p>
+ * Files checked in together are written as one entry: entries with the same
+ * user, message and change type whose dates are at most a time window away
+ * from the first entry of the group are grouped, and the entry lists all
+ * their files with their revisions. The window is taken in
+ * seconds from the system property
+ * <tt>hudson.plugins.starteam.StarTeamChangeLogBuilder.groupWindow</tt> and
+ * defaults to 60, a negative value writes one entry per file.
+ * </p>
  * 
  * @author Eric D. Broyles
  * @author Steve Favez <sfavez@verisign.com>
  */
 public final class StarTeamChangeLogBuilder {
 
+	static final long GROUP_WINDOW = Long.getLong(StarTeamChangeLogBuilder.class.getName() + ".groupWindow", 60).longValue();
+
 	/**
 	 * Stores the history objects to the output stream as xml.
 	 * <p>
@@ -34,11 +51,19 @@ public final class StarTeamChangeLogBuilder {
 	 *                 &lt;date&gt;2008-06-23 09:46:27&lt;/date&gt;
 	 *                 &lt;message&gt;Checkin message&lt;/message&gt;
 	 *                 &lt;user&gt;Author Name&lt;/user&gt;
+	 *                 &lt;affectedPaths&gt;
+	 *                         &lt;path revision="73"&gt;src/File.java&lt;/path&gt;
+	 *                         &lt;path revision="12"&gt;test/File.java&lt;/path&gt;
+	 *                 &lt;/affectedPaths&gt;
 	 *         &lt;/entry&gt;
 	 *   &lt;/changelog&gt;
 	 * 
 	 * </pre>
 	 * 
+	 * The affected paths are only written for an entry of several files. They
+	 * are relative to the checked out folder, or just the file name where the
+	 * folder is not known. The revision of a path is left out if it is not
+	 * known.
 	 * </p>
 	 * 
 	 * @param outputStream
@@ -51,28 +76,72 @@ public final class StarTeamChangeLogBuilder {
 	public static boolean writeChangeLog(OutputStream outputStream,
 			StarTeamChangeSet changeSet)
 			throws IOException {
+		return writeChangeLog(outputStream, null, changeSet);
+	}
+
+	/**
+	 * Stores the history objects to the output stream as xml, and the offset
+	 * of every entry to the index stream.
+	 * 
+	 * @param outputStream
+	 *            the stream to write to, closed when done
+	 * @param indexStream
+	 *            the stream to write the {@link StarTeamChangeLogIndex} to,
+	 *            left open, or null for none
+	 * @param changeSet
+	 *            the history objects to store
+	 * @throws IOException
+	 */
+	static boolean writeChangeLog(OutputStream outputStream,
+			OutputStream indexStream, StarTeamChangeSet changeSet)
+			throws IOException {
 
 		GregorianCalendar cal = (GregorianCalendar) Calendar.getInstance();
 		
 		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd' 'HH:mm:ss");
 	    dateFormat.setCalendar(cal);
 	    dateFormat.setLenient(false);
-		
-		OutputStreamWriter writer = new OutputStreamWriter(outputStream,
-				Charset.forName("UTF-8"));
-		
-		PrintWriter printwriter = new PrintWriter( writer ) ;
+
+		// every entry is encoded on its own, to know where it starts
+		StringWriter text = new StringWriter();
+		PrintWriter printwriter = new PrintWriter( text ) ;
+
+		Collection<StarTeamChangeLogEntry> changes = group(changeSet.getChanges(), GROUP_WINDOW * 1000);
+		long[] offsets = new long[changes.size() + 1];
+		int count = 0;
 
 		printwriter.println("<?xml version='1.0' encoding='UTF-8'?>");
 		printwriter.println("<changelog>");
-		for (StarTeamChangeLogEntry change : changeSet.getChanges()) {
+		long offset = write(text, outputStream, 0);
+		for (StarTeamChangeLogEntry change : changes) {
+			offsets[count++] = offset;
 			writeEntry(dateFormat, printwriter, change);
+			offset = write(text, outputStream, offset);
 		}
+		offsets[count] = offset;
 		printwriter.println("</changelog>");
-		printwriter.close();
+		write(text, outputStream, offset);
+		outputStream.close();
+
+		if (indexStream != null) {
+			StarTeamChangeLogIndex.store(indexStream, offsets);
+		}
 		return true;
 	}
 
+	/**
+	 * Moves the text written so far to the stream.
+	 * 
+	 * @return the offset after the text
+	 */
+	private static long write(StringWriter text, OutputStream outputStream,
+			long offset) throws IOException {
+		byte[] bytes = text.toString().getBytes("UTF-8");
+		text.getBuffer().setLength(0);
+		outputStream.write(bytes);
+		return offset + bytes.length;
+	}
+
 	/**
 	 * @param dateFormat
 	 * @param printwriter
@@ -96,7 +165,100 @@ public final class StarTeamChangeLogBuilder {
 		printwriter.println("\t\t<changeType>"
 				+ Util.xmlEscape(change.getChangeType())
 				+ "</changeType>");
+		if (change.isGrouped()) {
+			printwriter.println("\t\t<affectedPaths>");
+			List<Integer> revisions = change.getAffectedRevisions();
+			int i = 0;
+			for (String path : change.getAffectedPaths()) {
+				int revision = revisions.get(i++).intValue();
+				printwriter.println("\t\t\t<path" + (revision >= 0 ? " revision=\"" + revision + "\"" : "") + ">"
+						+ Util.xmlEscape(path) + "</path>");
+			}
+			printwriter.println("\t\t</affectedPaths>");
+		}
 		printwriter.println("\t</entry>");
 	}
 
+	/**
+	 * Groups the entries of files checked in together.
+	 * 
+	 * @param changes
+	 *            entries of single files
+	 * @param window
+	 *            the most milliseconds between the first entry of a group and
+	 *            any other, or a negative number for no grouping
+	 * @return the grouped entries, in the order of their first file. The
+	 *         given entries are returned as they are if nothing is grouped.
+	 */
+	static Collection<StarTeamChangeLogEntry> group(
+			Collection<StarTeamChangeLogEntry> changes, long window) {
+		if (window < 0) {
+			return changes;
+		}
+		List<Group> groups = new ArrayList<Group>();
+		// the groups of every user, message and change type
+		Map<List<String>, List<Group>> byKey = new HashMap<List<String>, List<Group>>();
+		for (StarTeamChangeLogEntry change : changes) {
+			List<String> key = Arrays.asList(change.getUsername(), change.getMsg(), change.getChangeType());
+			long time = change.getDate() != null ? change.getDate().getTime() : 0;
+			List<Group> candidates = byKey.get(key);
+			if (candidates == null) {
+				candidates = new ArrayList<Group>(1);
+				byKey.put(key, candidates);
+			}
+			Group group = null;
+			for (Group candidate : candidates) {
+				if (Math.abs(time - candidate.first) <= window) {
+					group = candidate;
+					break;
+				}
+			}
+			if (group == null) {
+				group = new Group(time);
+				groups.add(group);
+				candidates.add(group);
+			}
+			group.add(change, time);
+		}
+		if (groups.size() == changes.size()) {
+			return changes;
+		}
+
+		List<StarTeamChangeLogEntry> result = new ArrayList<StarTeamChangeLogEntry>(groups.size());
+		for (Group group : groups) {
+			StarTeamChangeLogEntry first = group.changes.get(0);
+			if (group.changes.size() == 1) {
+				result.add(first);
+				continue;
+			}
+			StarTeamChangeLogEntry grouped = new StarTeamChangeLogEntry(first.getFileName(), first.getRevisionNumber(),
+					new Date(group.last), first.getUsername(), first.getMsg(), first.getChangeType());
+			for (StarTeamChangeLogEntry change : group.changes) {
+				grouped.addAffectedPath(change.getPath(), change.getRevisionNumber());
+			}
+			result.add(grouped);
+		}
+		return result;
+	}
+
+	/**
+	 * Entries of files checked in together.
+	 */
+	private static final class Group {
+		final List<StarTeamChangeLogEntry> changes = new ArrayList<StarTeamChangeLogEntry>();
+		/** time of the first entry, the window is measured from it. */
+		final long first;
+		long last;
+
+		Group(long time) {
+			first = time;
+			last = time;
+		}
+
+		void add(StarTeamChangeLogEntry change, long time) {
+			changes.add(change);
+			last = Math.max(last, time);
+		}
+	}
+
 }
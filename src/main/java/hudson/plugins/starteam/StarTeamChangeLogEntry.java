@@ -3,9 +3,14 @@ package hudson.plugins.starteam;
 import hudson.model.User;
 import hudson.scm.ChangeLogSet;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
 
 /**
  * <p>
@@ -27,8 +32,17 @@ public class StarTeamChangeLogEntry extends hudson.scm.ChangeLogSet.Entry {
 
   private String fileName;
 
+  /** path relative to the checked out folder, null if only the name is known. */
+  private String path;
+
   private String changeType;
 
+  /** all files of a grouped check-in, null for a single file. */
+  private List<String> affectedPaths;
+
+  /** revision of every affected path, -1 if not known. */
+  private List<Integer> affectedRevisions;
+
   public StarTeamChangeLogEntry(String fileName, int revisionNumber, Date date,
       String username, String msg, String changeType) {
     super();
@@ -44,13 +58,99 @@ public class StarTeamChangeLogEntry extends hudson.scm.ChangeLogSet.Entry {
     super();
   }
 
+  /**
+   * Creates the entry that stands for all files of a first build, instead of
+   * one entry per file.
+   * 
+   * @param folder
+   *          the folder the files were checked out from
+   * @param topLevelFolders
+   *          names of the subfolders of the folder
+   * @param fileCount
+   *          number of files
+   * @param totalSize
+   *          size of all files, in bytes
+   * @param date
+   *          time of the import
+   */
+  public static StarTeamChangeLogEntry initialImport(String folder,
+      Collection<String> topLevelFolders, int fileCount, long totalSize,
+      Date date) {
+    StringBuilder msg = new StringBuilder("Initial import of ");
+    msg.append(fileCount).append(fileCount == 1 ? " file" : " files");
+    msg.append(" (").append(FileUtils.byteCountToDisplaySize(totalSize))
+        .append(")");
+    String separator = " in ";
+    for (String f : topLevelFolders) {
+      msg.append(separator).append(f);
+      separator = ", ";
+    }
+    StarTeamChangeLogEntry entry =
+        new StarTeamChangeLogEntry(folder, 0, date, "", msg.toString(),
+            "import");
+    for (String f : topLevelFolders) {
+      entry.addAffectedPath(f);
+    }
+    return entry;
+  }
+
+  /**
+   * @return the files of the check-in, relative to the checked out folder,
+   *         or the file name of an entry for a single file.
+   */
   @Override
   public Collection<String> getAffectedPaths() {
+    if (affectedPaths != null) {
+      return affectedPaths;
+    }
     Collection<String> list = new LinkedList<String>();
     list.add(fileName);
     return list;
   }
 
+  /**
+   * @return the revision of every affected path, in the same order, -1 if
+   *         not known.
+   */
+  public List<Integer> getAffectedRevisions() {
+    if (affectedRevisions != null) {
+      return affectedRevisions;
+    }
+    return Collections.singletonList(Integer.valueOf(revisionNumber));
+  }
+
+  /**
+   * Adds a file without a revision to an entry for a check-in of several
+   * files.
+   */
+  public void addAffectedPath(String aPath) {
+    addAffectedPath(aPath, -1);
+  }
+
+  /**
+   * Adds a file to an entry for a check-in of several files.
+   * 
+   * @param aPath
+   *          the file
+   * @param aRevisionNumber
+   *          the revision of the file checked in, -1 if not known
+   */
+  public void addAffectedPath(String aPath, int aRevisionNumber) {
+    if (affectedPaths == null) {
+      affectedPaths = new ArrayList<String>();
+      affectedRevisions = new ArrayList<Integer>();
+    }
+    affectedPaths.add(aPath);
+    affectedRevisions.add(Integer.valueOf(aRevisionNumber));
+  }
+
+  /**
+   * @return true if the entry stands for a check-in of several files.
+   */
+  public boolean isGrouped() {
+    return affectedPaths != null && affectedPaths.size() > 1;
+  }
+
   /**
    * Gets the Hudson user based upon the StarTeam {@link #username}.
    * 
@@ -105,6 +205,18 @@ public class StarTeamChangeLogEntry extends hudson.scm.ChangeLogSet.Entry {
     this.fileName = aFileName;
   }
 
+  /**
+   * @return the path of the file relative to the checked out folder, with
+   *         '/' as separator, or the file name if the path is not known.
+   */
+  public String getPath() {
+    return path != null ? path : fileName;
+  }
+
+  public void setPath(String aPath) {
+    this.path = aPath;
+  }
+
   public String getChangeType() {
     return changeType;
   }
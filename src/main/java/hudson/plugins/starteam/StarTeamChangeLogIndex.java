@@ -0,0 +1,138 @@
+package hudson.plugins.starteam;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Offset index of a <tt>changelog.xml</tt>, stored next to it with the suffix
+ * {@link #SUFFIX}. It holds the byte offset of every entry and of the closing
+ * <tt>&lt;/changelog&gt;</tt> tag, so that a page of entries can be read
+ * without parsing the entries before it.
+ */
+final class StarTeamChangeLogIndex {
+
+	static final String SUFFIX = ".idx";
+
+	private static final int MAGIC = 0x5354434c; // "STCL"
+	private static final int VERSION = 1;
+
+	private static final byte[] END_TAG = bytes("</changelog>");
+
+	private StarTeamChangeLogIndex() {
+	}
+
+	/**
+	 * @param changelog a change log file
+	 * @return the index file of the change log
+	 */
+	static java.io.File indexFile(java.io.File changelog) {
+		return new java.io.File(changelog.getParentFile(), changelog.getName() + SUFFIX);
+	}
+
+	/**
+	 * @param os the stream to write to, left open
+	 * @param offsets offsets of all entries, followed by the offset of the end tag
+	 */
+	static void store(OutputStream os, long[] offsets) throws IOException {
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(offsets.length - 1);
+		for (long offset : offsets) {
+			out.writeLong(offset);
+		}
+		out.flush();
+	}
+
+	/**
+	 * @param changelog a change log file
+	 * @return the offsets of all entries, followed by the offset of the end
+	 *         tag, or null if there is no index or it doesn't match the
+	 *         change log.
+	 */
+	static long[] load(java.io.File changelog) {
+		java.io.File file = indexFile(changelog);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			long[] offsets;
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					return null;
+				}
+				offsets = new long[in.readInt() + 1];
+				for (int i = 0; i < offsets.length; i++) {
+					offsets[i] = in.readLong();
+					if (i > 0 && offsets[i] < offsets[i - 1]) {
+						return null;
+					}
+				}
+			} finally {
+				in.close();
+			}
+			return endsAt(changelog, offsets[offsets.length - 1]) ? offsets : null;
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads part of a change log.
+	 *
+	 * @param changelog a change log file
+	 * @param from offset of the first byte
+	 * @param to offset after the last byte
+	 * @return the bytes, with the room of <tt>prefix</tt> and <tt>suffix</tt>
+	 *         bytes left before and after them.
+	 */
+	static byte[] read(java.io.File changelog, long from, long to, byte[] prefix, byte[] suffix) throws IOException {
+		byte[] result = new byte[prefix.length + (int) (to - from) + suffix.length];
+		RandomAccessFile file = new RandomAccessFile(changelog, "r");
+		try {
+			file.seek(from);
+			file.readFully(result, prefix.length, (int) (to - from));
+		} finally {
+			file.close();
+		}
+		System.arraycopy(prefix, 0, result, 0, prefix.length);
+		System.arraycopy(suffix, 0, result, result.length - suffix.length, suffix.length);
+		return result;
+	}
+
+	/**
+	 * @return true if the end tag of the change log is at the given offset.
+	 */
+	private static boolean endsAt(java.io.File changelog, long offset) throws IOException {
+		if (offset + END_TAG.length > changelog.length()) {
+			return false;
+		}
+		byte[] tag = new byte[END_TAG.length];
+		RandomAccessFile file = new RandomAccessFile(changelog, "r");
+		try {
+			file.seek(offset);
+			file.readFully(tag);
+		} finally {
+			file.close();
+		}
+		return Arrays.equals(tag, END_TAG);
+	}
+
+	static byte[] bytes(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -16,13 +16,19 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.dom4j.Document;
-import org.dom4j.Node;
-import org.dom4j.io.SAXReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.xml.sax.SAXException;
 
 /**
  * ChangeLogParser implementation for the StarTeam SCM.
+ * <p>
+ * The change log is read in one forward pass with a streaming parser, so
+ * only the entries themselves are kept in memory, not the document.
+ * </p>
  * 
  * @author Eric D. Broyles
  * @version 1.0
@@ -34,8 +40,19 @@ public class StarTeamChangeLogParser extends ChangeLogParser {
   @Override
   public ChangeLogSet<? extends Entry> parse(AbstractBuild build,
       File changelogFile) throws IOException, SAXException {
-    return parse0(build, new FileInputStream(changelogFile),
-        changelogFile.getAbsolutePath());
+    long[] offsets = StarTeamChangeLogIndex.load(changelogFile);
+    if (offsets != null
+        && offsets.length - 1 > StarTeamChangeLogSet.PAGE_SIZE) {
+      // large change logs are read a page at a time, when shown
+      return new StarTeamChangeLogSet(build, changelogFile, offsets,
+          StarTeamChangeLogSet.PAGE_SIZE);
+    }
+    InputStream stream = new FileInputStream(changelogFile);
+    try {
+      return parse0(build, stream, changelogFile.getAbsolutePath());
+    } finally {
+      stream.close();
+    }
   }
 
   /**
@@ -60,7 +77,16 @@ public class StarTeamChangeLogParser extends ChangeLogParser {
         };
       };
 
-  @SuppressWarnings("unchecked")
+  private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+        Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    return factory;
+  }
+
   private static StarTeamChangeLogSet parse0(AbstractBuild aBuild,
       InputStream aChangeLogStream, String filePath) throws IOException,
       SAXException {
@@ -68,61 +94,136 @@ public class StarTeamChangeLogParser extends ChangeLogParser {
     ArrayList<StarTeamChangeLogEntry> changeLogEntries =
         new ArrayList<StarTeamChangeLogEntry>();
 
-    SAXReader reader = new SAXReader();
-    Document changeDoc = null;
     StarTeamChangeLogSet changeLogSet =
         new StarTeamChangeLogSet(aBuild, changeLogEntries);
 
     try {
-      changeDoc = reader.read(aChangeLogStream);
+      readEntries(aChangeLogStream, changeLogSet, changeLogEntries);
+    } catch (Exception e) {
+      throw new IOException("Failed to parse changelog file"
+          + (filePath != null ? filePath : "") + ": " + e.getMessage(), e);
+    }
+    return changeLogSet;
+  }
 
-      Node historyNode = changeDoc.selectSingleNode("/changelog");
-      if (historyNode == null) {
-        return changeLogSet;
-      }
+  /**
+   * Parses part of a change log file.
+   * 
+   * @param changelogFile
+   *          the change log file, for error messages
+   * @param aChangeLogStream
+   *          a changelog element with some of the entries of the file
+   * @param changeLogSet
+   *          the parent of the entries
+   * @return the entries
+   */
+  static List<StarTeamChangeLogEntry> parsePage(File changelogFile,
+      InputStream aChangeLogStream, StarTeamChangeLogSet changeLogSet)
+      throws IOException {
+    List<StarTeamChangeLogEntry> changeLogEntries =
+        new ArrayList<StarTeamChangeLogEntry>();
+    try {
+      readEntries(aChangeLogStream, changeLogSet, changeLogEntries);
+    } catch (Exception e) {
+      throw new IOException("Failed to parse changelog file"
+          + changelogFile.getAbsolutePath() + ": " + e.getMessage(), e);
+    }
+    return changeLogEntries;
+  }
 
-      List<Node> entries = historyNode.selectNodes("entry");
-      if (entries == null) {
-        return changeLogSet;
+  /**
+   * Reads the entries of a changelog element. Nothing is read if the root
+   * element is not a changelog.
+   */
+  private static void readEntries(InputStream aChangeLogStream,
+      StarTeamChangeLogSet changeLogSet,
+      List<StarTeamChangeLogEntry> changeLogEntries)
+      throws XMLStreamException, java.text.ParseException {
+    XMLStreamReader reader =
+        XML_INPUT_FACTORY.createXMLStreamReader(aChangeLogStream);
+    try {
+      if (reader.nextTag() != XMLStreamConstants.START_ELEMENT
+          || !"changelog".equals(reader.getLocalName())) {
+        return;
       }
-
-      for (Node node : entries) {
-        StarTeamChangeLogEntry change = new StarTeamChangeLogEntry();
-
-        if (node.selectSingleNode("fileName") != null) {
-          change
-              .setFileName(node.selectSingleNode("fileName").getStringValue());
-        }
-        if (node.selectSingleNode("revisionNumber") != null) {
-          change.setRevisionNumber(Integer.parseInt((node
-              .selectSingleNode("revisionNumber").getStringValue())));
-        }
-
-        if (node.selectSingleNode("date") != null) {
-          change.setDate(TIME_FORMATTER.get().parse(
-              node.selectSingleNode("date").getStringValue()));
-        }
-
-        if (node.selectSingleNode("message") != null) {
-          change.setMsg(node.selectSingleNode("message").getStringValue());
-        }
-
-        if (node.selectSingleNode("user") != null) {
-          change.setUsername(node.selectSingleNode("user").getStringValue());
+      while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+        if ("entry".equals(reader.getLocalName())) {
+          StarTeamChangeLogEntry change = readEntry(reader);
+          change.setParent(changeLogSet); // Assign Parent
+          changeLogEntries.add(change);
+        } else {
+          readText(reader);
         }
+      }
+    } finally {
+      reader.close();
+    }
+  }
 
-        if (node.selectSingleNode("changeType") != null) {
-          change.setChangeType(node.selectSingleNode("changeType")
-              .getStringValue());
+  /**
+   * Reads the children of an entry element, leaving the reader on its end
+   * tag. Unknown children are skipped.
+   */
+  private static StarTeamChangeLogEntry readEntry(XMLStreamReader reader)
+      throws XMLStreamException, java.text.ParseException {
+    StarTeamChangeLogEntry change = new StarTeamChangeLogEntry();
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      String name = reader.getLocalName();
+      if ("affectedPaths".equals(name)) {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+          boolean path = "path".equals(reader.getLocalName());
+          String revision = path ? reader.getAttributeValue(null, "revision") : null;
+          String value = readText(reader);
+          if (path) {
+            change.addAffectedPath(value,
+                revision != null ? Integer.parseInt(revision) : -1);
+          }
         }
+        continue;
+      }
+      String value = readText(reader);
+      if ("fileName".equals(name)) {
+        change.setFileName(value);
+      } else if ("revisionNumber".equals(name)) {
+        change.setRevisionNumber(Integer.parseInt(value));
+      } else if ("date".equals(name)) {
+        change.setDate(TIME_FORMATTER.get().parse(value));
+      } else if ("message".equals(name)) {
+        change.setMsg(value);
+      } else if ("user".equals(name)) {
+        change.setUsername(value);
+      } else if ("changeType".equals(name)) {
+        change.setChangeType(value);
+      }
+    }
+    return change;
+  }
 
-        change.setParent(changeLogSet); // Assign Parent
-        changeLogEntries.add(change);
+  /**
+   * Reads the text of the current element, including the text of nested
+   * elements, leaving the reader on its end tag.
+   */
+  private static String readText(XMLStreamReader reader)
+      throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          text.append(reader.getText());
+          break;
+        default:
+          break;
       }
-    } catch (Exception e) {
-      throw new IOException("Failed to parse changelog file"
-          + (filePath != null ? filePath : "") + ": " + e.getMessage(), e);
     }
-    return changeLogSet;
+    return text.toString();
   }
 }
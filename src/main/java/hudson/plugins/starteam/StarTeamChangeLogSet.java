@@ -3,6 +3,10 @@ package hudson.plugins.starteam;
 import hudson.model.AbstractBuild;
 import hudson.scm.ChangeLogSet;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -11,17 +15,30 @@ import java.util.List;
  * <p>
  * Implementation of {@link ChangeLogSet} for StarTeam SCM.
  * </p>
- * 
+ * <p>
+ * The views show the entries a page at a time. A change log with an offset
+ * index ({@link StarTeamChangeLogIndex}) and more than one page of entries is
+ * not kept in memory: its history reads the page of the requested entry from
+ * the file, remembering only the last page read. The number of entries per
+ * page is taken from the system property
+ * <tt>hudson.plugins.starteam.StarTeamChangeLogSet.pageSize</tt> and
+ * defaults to 100.
+ * </p>
+ *
  * @author Eric D. Broyles
  * @version 1.0
  */
 public class StarTeamChangeLogSet extends ChangeLogSet<StarTeamChangeLogEntry> {
 
+	static final int PAGE_SIZE = Math.max(1, Integer.getInteger(StarTeamChangeLogSet.class.getName() + ".pageSize", 100));
+
 	private List<StarTeamChangeLogEntry> history = null;
 
+	private final int pageSize;
+
 	/**
 	 * default constructor for log set.
-	 * 
+	 *
 	 * @param aBuild
 	 * 		the build associated with changes.
 	 * @param logs
@@ -31,6 +48,27 @@ public class StarTeamChangeLogSet extends ChangeLogSet<StarTeamChangeLogEntry> {
 			List<StarTeamChangeLogEntry> logs) {
 		super(aBuild);
 		this.history = Collections.unmodifiableList(logs);
+		this.pageSize = PAGE_SIZE;
+	}
+
+	/**
+	 * log set reading its entries from the change log file when needed.
+	 *
+	 * @param aBuild
+	 * 		the build associated with changes.
+	 * @param changelogFile
+	 * 		the change log file.
+	 * @param offsets
+	 * 		offsets of all entries in the file, followed by the offset of the
+	 * 		end tag.
+	 * @param pageSize
+	 * 		number of entries per page.
+	 */
+	StarTeamChangeLogSet(AbstractBuild<?, ?> aBuild, File changelogFile,
+			long[] offsets, int pageSize) {
+		super(aBuild);
+		this.pageSize = pageSize;
+		this.history = new PagedHistory(changelogFile, offsets);
 	}
 
 	@Override
@@ -47,11 +85,114 @@ public class StarTeamChangeLogSet extends ChangeLogSet<StarTeamChangeLogEntry> {
 
 	/**
 	 * Return the history for this change log set.
-	 * 
+	 *
 	 * @return a List of all log entries
 	 */
 	public List<StarTeamChangeLogEntry> getHistory() {
 		return history;
 	}
 
+	/**
+	 * @return the number of entries.
+	 */
+	public int getSize() {
+		return history.size();
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @return the number of pages, at least 1.
+	 */
+	public int getPageCount() {
+		return Math.max(1, (history.size() + pageSize - 1) / pageSize);
+	}
+
+	/**
+	 * @param page
+	 * 		a page number, from 0
+	 * @return the index of the first entry of the page.
+	 */
+	public int getPageStart(int page) {
+		return page * pageSize;
+	}
+
+	/**
+	 * @param page
+	 * 		a page number, from 0
+	 * @return the entries of the page, empty if there is no such page.
+	 */
+	public List<StarTeamChangeLogEntry> getPage(int page) {
+		if (page < 0 || page >= getPageCount()) {
+			return Collections.emptyList();
+		}
+		int start = getPageStart(page);
+		return history.subList(start, Math.min(history.size(), start + pageSize));
+	}
+
+	/**
+	 * @param page
+	 * 		a page number as given in a request, may be null
+	 * @return the page number, or 0 if it is not a valid one.
+	 */
+	public int toPage(String page) {
+		try {
+			int result = Integer.parseInt(page);
+			return result >= 0 && result < getPageCount() ? result : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * The entries of an indexed change log file, read a page at a time.
+	 */
+	private final class PagedHistory extends AbstractList<StarTeamChangeLogEntry> {
+		private final File changelogFile;
+		private final long[] offsets;
+		private int loadedPage = -1;
+		private List<StarTeamChangeLogEntry> loaded;
+
+		PagedHistory(File changelogFile, long[] offsets) {
+			this.changelogFile = changelogFile;
+			this.offsets = offsets;
+		}
+
+		@Override
+		public int size() {
+			return offsets.length - 1;
+		}
+
+		@Override
+		public synchronized StarTeamChangeLogEntry get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+			}
+			int page = index / pageSize;
+			if (page != loadedPage) {
+				loaded = load(page * pageSize, Math.min(size(), (page + 1) * pageSize));
+				loadedPage = page;
+			}
+			return loaded.get(index - page * pageSize);
+		}
+
+		private List<StarTeamChangeLogEntry> load(int from, int to) {
+			try {
+				byte[] xml = StarTeamChangeLogIndex.read(changelogFile, offsets[from], offsets[to],
+						StarTeamChangeLogIndex.bytes("<changelog>"), StarTeamChangeLogIndex.bytes("</changelog>"));
+				List<StarTeamChangeLogEntry> result = StarTeamChangeLogParser.parsePage(changelogFile,
+						new ByteArrayInputStream(xml), StarTeamChangeLogSet.this);
+				if (result.size() != to - from) {
+					throw new IOException("Changelog file " + changelogFile.getAbsolutePath()
+							+ " doesn't match its index");
+				}
+				return result;
+			} catch (IOException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+	}
+
 }
@@ -32,6 +32,10 @@ public class StarTeamChangeSet {
 
   private Collection<StarTeamChangeLogEntry> changes = new ArrayList<StarTeamChangeLogEntry>();
 
+  private StarTeamHighWaterMark highWaterMark;
+
+  private String filePointDigest;
+
   public boolean hasChanges() {
       return !changes.isEmpty() ;
   }
@@ -67,6 +71,25 @@ public class StarTeamChangeSet {
   public void setComparisonAvailable(boolean comparisonAvailable) {
     this.comparisonAvailable = comparisonAvailable;
   }
+  StarTeamHighWaterMark getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  void setHighWaterMark(StarTeamHighWaterMark highWaterMark) {
+    this.highWaterMark = highWaterMark;
+  }
+
+  /**
+   * @return digest of the file the file points were stored in, set by the checkout.
+   */
+  String getFilePointDigest() {
+    return filePointDigest;
+  }
+
+  void setFilePointDigest(String filePointDigest) {
+    this.filePointDigest = filePointDigest;
+  }
+
   public void addChange(StarTeamChangeLogEntry value) {
 	  changes.add(value);
   }
@@ -14,7 +14,17 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.starbase.starteam.Folder;
 
@@ -34,6 +44,14 @@ class StarTeamCheckoutActor implements FileCallable<Boolean>, Serializable {
 	 */
 	private static final long serialVersionUID = -3748818546244161292L;
 
+	/**
+	 * Number of folder mappings checked out at the same time, taken from the
+	 * system property
+	 * <tt>hudson.plugins.starteam.StarTeamCheckoutActor.threads</tt>. Defaults
+	 * to 4.
+	 */
+	static final int THREADS = Integer.getInteger(StarTeamCheckoutActor.class.getName() + ".threads", 4);
+
 	private final FilePath changelog;
 	private final BuildListener listener;
 	private final String hostname;
@@ -42,10 +60,10 @@ class StarTeamCheckoutActor implements FileCallable<Boolean>, Serializable {
 	private final String passwd;
 	private final String projectname;
 	private final String viewname;
-	private final String foldername;
+	private final List<StarTeamFolderMapping> mappings;
 	private final StarTeamViewSelector config;
-	private final Collection<StarTeamFilePoint> historicFilePoints;
-	private final FilePath filePointFilePath;
+	private final List<StarTeamFilePointSnapshot> historicFilePoints;
+	private final FilePath buildDirPath;
 	private final int buildNumber;
 
 	/**
@@ -77,17 +95,53 @@ class StarTeamCheckoutActor implements FileCallable<Boolean>, Serializable {
 			String passwd, String projectname, String viewname,
 			String foldername, StarTeamViewSelector config, FilePath changelogFile, BuildListener listener,
 			AbstractBuild<?, ?> build, FilePath filePointFilePath ) {
+		this(hostname, port, user, passwd, projectname, viewname,
+				Collections.singletonList(StarTeamFolderMapping.single(foldername)), config, changelogFile, listener,
+				build, filePointFilePath.getParent());
+	}
+
+	/**
+	 * 
+	 * Constructor for a checkout of several folders.
+	 * 
+	 * @param hostname
+	 * 		starteam host name
+	 * @param port
+	 * 		starteam port
+	 * @param user
+	 * 		starteam connection user
+	 * @param passwd
+	 * 		starteam connection password
+	 * @param projectname
+	 * 		starteam project name
+	 * @param viewname
+	 * 		starteam view name
+	 * @param mappings
+	 * 		starteam folders and the workspace directories they are checked out to
+	 * @param config
+	 * 		configuration selector
+	 * @param changelogFile
+	 * 		change log file, as a filepath, to be able to write remotely.
+	 * @param listener
+	 * 		the build listener
+	 * @param buildDirPath
+	 * 		the build directory, where the file points of each folder are stored
+	 */
+	StarTeamCheckoutActor(String hostname, int port, String user,
+			String passwd, String projectname, String viewname,
+			List<StarTeamFolderMapping> mappings, StarTeamViewSelector config, FilePath changelogFile, BuildListener listener,
+			AbstractBuild<?, ?> build, FilePath buildDirPath ) {
 		this.hostname = hostname;
 		this.port = port;
 		this.user = user;
 		this.passwd = passwd;
 		this.projectname = projectname;
 		this.viewname = viewname;
-		this.foldername = foldername;
+		this.mappings = new ArrayList<StarTeamFolderMapping>(mappings);
 		this.changelog = changelogFile;
 		this.listener = listener;
 		this.config = config;
-		this.filePointFilePath = filePointFilePath;
+		this.buildDirPath = buildDirPath;
 		// Would like to store build in its entirety, but it is not serializable.
 		if (build == null) {
 			this.buildNumber = -1;
@@ -98,20 +152,22 @@ class StarTeamCheckoutActor implements FileCallable<Boolean>, Serializable {
 		// Previous versions stored the build object as a member of StarTeamCheckoutActor. AbstractBuild
 		// objects are not serializable, therefore the starteam plugin would break when remoting to
 		// another machine. Instead of storing the build object the information from the build object
-		// that is needed (historicFilePoints) is stored.
+		// that is needed (historicFilePoints) is stored. Only a reference to the stored file points
+		// is sent, the node loads them if it doesn't have them already.
 		
 		// Get a list of files that require updating
-		Collection<StarTeamFilePoint> historicFilePoints = null;
+		List<StarTeamFilePointSnapshot> historicFilePoints = new ArrayList<StarTeamFilePointSnapshot>();
 		AbstractBuild<?, ?> lastBuild = (build == null) ? null : build.getPreviousBuild();
-		if (lastBuild != null){
-			try {
-				File filePointFile = new File(lastBuild.getRootDir(), StarTeamConnection.FILE_POINT_FILENAME);
-				if (filePointFile.exists()) {
-					historicFilePoints = StarTeamFilePointFunctions.loadCollection(filePointFile);
+		for (StarTeamFolderMapping mapping : this.mappings) {
+			StarTeamFilePointSnapshot snapshot = null;
+			if (lastBuild != null){
+				try {
+					snapshot = StarTeamFilePointSnapshot.of(lastBuild.getRootDir(), mapping.getFilePointFileName());
+				} catch (IOException e) {
+					e.printStackTrace(listener.getLogger());
 				}
-			} catch (IOException e) {
-				e.printStackTrace(listener.getLogger());
 			}
+			historicFilePoints.add(snapshot);
 		}
 		this.historicFilePoints = historicFilePoints;
 	}
@@ -124,42 +180,136 @@ class StarTeamCheckoutActor implements FileCallable<Boolean>, Serializable {
 	 */
 	public Boolean invoke(File workspace, VirtualChannel channel)
 			throws IOException {
+		List<StarTeamChangeSet> changeSets;
+		if (mappings.size() == 1) {
+			changeSets = Collections.singletonList(checkOut(0, workspace));
+		} else {
+			changeSets = checkOutInParallel(workspace);
+		}
+
+		// one change log for all folders
+		StarTeamChangeSet changeSet = new StarTeamChangeSet();
+		for (StarTeamChangeSet folderChangeSet : changeSets) {
+			if (folderChangeSet == null) {
+				return false;
+			}
+			for (StarTeamChangeLogEntry change : folderChangeSet.getChanges()) {
+				changeSet.addChange(change);
+			}
+		}
+
+		listener.getLogger().println("creating change log file ");
+		try {
+			createChangeLog(changeSet, workspace, changelog, listener, null);
+		} catch (InterruptedException e) {
+			listener.getLogger().println( "unable to create changelog file " +  e.getMessage()) ;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks out the folders of all mappings at the same time, each with its
+	 * own connection.
+	 */
+	private List<StarTeamChangeSet> checkOutInParallel(final File workspace) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(THREADS, mappings.size())), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "StarTeam folder checkout " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			List<Future<StarTeamChangeSet>> futures = new ArrayList<Future<StarTeamChangeSet>>();
+			for (int i = 0; i < mappings.size(); i++) {
+				final int index = i;
+				futures.add(pool.submit(new Callable<StarTeamChangeSet>() {
+					public StarTeamChangeSet call() throws IOException {
+						return checkOut(index, workspace);
+					}
+				}));
+			}
+			List<StarTeamChangeSet> result = new ArrayList<StarTeamChangeSet>();
+			for (Future<StarTeamChangeSet> future : futures) {
+				result.add(future.get());
+			}
+			return result;
+		} catch (InterruptedException e) {
+			throw new IOException("checkout interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("checkout failed", cause);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Checks out the folder of one mapping and stores its file points.
+	 *
+	 * @param index the index of the mapping
+	 * @param root the workspace of the job
+	 * @return the changes of the folder, or null if the connection failed
+	 */
+	private StarTeamChangeSet checkOut(int index, File root) throws IOException {
+		StarTeamFolderMapping mapping = mappings.get(index);
+		File workspace = mapping.getWorkspace(root);
+		if (mappings.size() > 1) {
+			listener.getLogger().println("Checking out " + mapping);
+		}
 		listener.getLogger().println("Initializing StarTeam connection ...");
 		StarTeamConnection connection = new StarTeamConnection(
 				hostname, port, user, passwd,
-				projectname, viewname, foldername, config);
+				projectname, viewname, mapping.getFolderName(), config);
 		try {
 			connection.initialize(buildNumber);
 		} catch (StarTeamSCMException e) {
 			listener.getLogger().println(e.getLocalizedMessage());
-			return false;
+			connection.close();
+			return null;
 		}
 		listener.getLogger().println("Initialized StarTeam connection.");
 		
 		listener.getLogger().print("Computing change set ");
 
-		StarTeamChangeSet changeSet;
+		StarTeamChangeSet changeSet = new StarTeamChangeSet();
 		try {
+			Collection<StarTeamFilePoint> historic = null;
+			StarTeamFilePointSnapshot historicSnapshot = historicFilePoints.get(index);
+			if (historicSnapshot != null) {
+				try {
+					historic = historicSnapshot.load(workspace);
+				} catch (InterruptedException e) {
+					throw new IOException("unable to load file points of the previous build", e);
+				}
+			}
 			Folder rootFolder = connection.getRootFolder();
-			changeSet = connection.computeChangeSet(rootFolder,workspace,historicFilePoints,listener.getLogger());
+			changeSet = connection.computeChangeSet(rootFolder,workspace,historic,listener.getLogger());
 			// Check 'em out
 			listener.getLogger().println("performing checkout ...");
 
-			connection.checkOut(changeSet, listener.getLogger(), filePointFilePath);
-
-			listener.getLogger().println("creating change log file ");
-			try {
-				createChangeLog(changeSet, workspace, changelog, listener,
-						connection);
-			} catch (InterruptedException e) {
-				listener.getLogger().println( "unable to create changelog file " +  e.getMessage()) ;
+			connection.checkOut(changeSet, listener.getLogger(), buildDirPath.child(mapping.getFilePointFileName()),
+					buildDirPath.child(mapping.getHighWaterMarkFileName()));
+			if (changeSet.getFilePointDigest() != null) {
+				// the next poll or build on this node needn't fetch them again
+				StarTeamFilePointSnapshot.put(workspace, changeSet.getFilePointDigest(), changeSet.getFilePointsToRemember());
 			}
 		} catch (StarTeamSCMException e1) {
 			e1.printStackTrace(listener.getLogger());
+		} finally {
+			// close the connection
+			connection.close();
 		}
-		// close the connection
-		connection.close();
-		return true;
+		return changeSet;
 	}
 
 	/**
@@ -195,20 +345,26 @@ class StarTeamCheckoutActor implements FileCallable<Boolean>, Serializable {
 		
 		OutputStream os = new BufferedOutputStream(
 				aChangelogFile.write());
+		FilePath indexFile = aChangelogFile.getParent().child(
+				aChangelogFile.getName() + StarTeamChangeLogIndex.SUFFIX);
+		OutputStream indexStream = new BufferedOutputStream(indexFile.write());
 
 		boolean created = false;
 		try {
-			created = StarTeamChangeLogBuilder.writeChangeLog(os, changes);
+			created = StarTeamChangeLogBuilder.writeChangeLog(os, indexStream, changes);
 		} catch (Exception ex) {
 			listener.getLogger().println(
 					"change log creation failed due to unexpected error : "
 							+ ex.getMessage());
 		} finally {
 			os.close();
+			indexStream.close();
 		}
 
-		if (!created)
+		if (!created) {
+			indexFile.delete();
 			createEmptyChangeLog(aChangelogFile, aListener, "log");
+		}
 
 		return true;
 	}
@@ -0,0 +1,600 @@
+package hudson.plugins.starteam;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+import com.starbase.starteam.CheckoutEvent;
+import com.starbase.starteam.CheckoutListener;
+import com.starbase.starteam.CheckoutManager;
+import com.starbase.starteam.File;
+import com.starbase.starteam.Item;
+import com.starbase.starteam.ItemList;
+import com.starbase.starteam.Status;
+
+/**
+ * Checks out files of a {@link StarTeamConnection}, optionally spreading the
+ * downloads over several StarTeam sessions.
+ * <p>
+ * The calling thread works on the session of the connection itself, every
+ * additional worker opens its own session on the same view configuration
+ * (sessions are not shared between threads) and picks the next file from a
+ * common list. Log output is written in the order of the files, whichever
+ * worker handled them, and the first failure stops all workers.
+ * </p>
+ * <p>
+ * In batch mode all files are first handed to a StarTeam
+ * {@link CheckoutManager} as one request on the session of the connection,
+ * which reports each finished file. Files the batch did not check out are
+ * then done one by one, as without batch mode.
+ * </p>
+ * <p>
+ * In pipeline mode the files are handed over with {@link #offer(File)} while
+ * the folders are still being listed, and the workers download them at the
+ * same time from a bounded queue. The session of the connection is busy
+ * listing, so only the additional sessions check out; the files of a
+ * pipeline are checked out on the calling thread by {@link #finish(boolean)}
+ * if no session could be opened. The log of a pipeline is held back until
+ * {@link #QUIET_FILES} files were listed, from then on individual files are
+ * not logged; otherwise {@link #finish(boolean)} decides.
+ * </p>
+ * <p>
+ * The number of sessions is taken from the system property
+ * <tt>hudson.plugins.starteam.StarTeamCheckoutEngine.workers</tt> and
+ * defaults to 1. Batch mode is enabled by setting
+ * <tt>hudson.plugins.starteam.StarTeamCheckoutEngine.batch</tt> to true,
+ * pipeline mode by setting
+ * <tt>hudson.plugins.starteam.StarTeamCheckoutEngine.pipeline</tt> to true.
+ * The number of files waiting in the pipeline is limited by
+ * <tt>hudson.plugins.starteam.StarTeamCheckoutEngine.queueSize</tt>, 1000 by
+ * default.
+ * </p>
+ */
+final class StarTeamCheckoutEngine {
+
+	static final int WORKERS = Integer.getInteger(StarTeamCheckoutEngine.class.getName() + ".workers", 1);
+
+	static final boolean BATCH = Boolean.getBoolean(StarTeamCheckoutEngine.class.getName() + ".batch");
+
+	static final boolean PIPELINE = Boolean.getBoolean(StarTeamCheckoutEngine.class.getName() + ".pipeline");
+
+	static final int QUEUE_SIZE = Integer.getInteger(StarTeamCheckoutEngine.class.getName() + ".queueSize", 1000);
+
+	/** number of files from which individual files are not logged. */
+	static final int QUIET_FILES = 2000;
+
+	private final StarTeamConnection connection;
+	private final PrintStream logger;
+	/** if true, individual files are not logged; a pipeline decides in {@link #finish(boolean)}. */
+	private final boolean quiet;
+	private final int workers;
+	private final boolean batch;
+
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile Throwable failure;
+	private List<Task> tasks;
+	private OrderedLog log;
+
+	/** files waiting for a pipeline worker, null if not pipelined. */
+	private BlockingQueue<Task> queue;
+	private volatile boolean producing;
+	private List<Task> planned;
+	/** number of files given to the pipeline, current or not. */
+	private int offered;
+	/** files of a pipeline without workers, checked out by {@link #finish(boolean)}. */
+	private List<Task> backlog;
+	private List<StarTeamConnection> sessions;
+	private List<Thread> threads;
+
+	/**
+	 * @param connection
+	 *            an initialized connection, owning the files to check out
+	 * @param logger
+	 *            the build log
+	 * @param quiet
+	 *            if true, individual files are not logged. Ignored by a
+	 *            pipeline, see {@link #finish(boolean)}.
+	 * @param workers
+	 *            number of sessions to check out with
+	 * @param batch
+	 *            if true, try to check out all files in one request first
+	 */
+	StarTeamCheckoutEngine(StarTeamConnection connection, PrintStream logger, boolean quiet, int workers, boolean batch) {
+		this.connection = connection;
+		this.logger = logger;
+		this.quiet = quiet;
+		this.workers = Math.max(1, workers);
+		this.batch = batch;
+	}
+
+	/**
+	 * Checks out all files that are not current. Local files that were
+	 * modified, merged or are unknown to StarTeam get replaced.
+	 *
+	 * @param files
+	 *            files of the connection's view
+	 * @return files with local changes that were overwritten, in the order of
+	 *         the given collection
+	 * @throws IOException
+	 *             if checking out a file fails. Files after it may not have
+	 *             been checked out.
+	 */
+	List<File> checkOut(Collection<File> files) throws IOException {
+		List<Task> planned = plan(files);
+		tasks = planned;
+		if (batch && !tasks.isEmpty()) {
+			tasks = checkOutBatch(tasks);
+		}
+		log = new OrderedLog(logger, quiet, false);
+
+		List<StarTeamConnection> sessions = openWorkers(Math.min(workers, tasks.size()) - 1);
+		if (!sessions.isEmpty()) {
+			logger.println("*** Checking out with [" + (sessions.size() + 1) + "] sessions");
+		}
+		List<Thread> threads = new ArrayList<Thread>();
+		try {
+			for (StarTeamConnection session : sessions) {
+				Thread thread = new Thread(new Worker(session), "StarTeam checkout worker " + (threads.size() + 1));
+				thread.setDaemon(true);
+				thread.start();
+				threads.add(thread);
+			}
+			new Worker(null).run();
+			joinAll(threads);
+		} finally {
+			for (StarTeamConnection session : sessions) {
+				session.close();
+			}
+		}
+		log.flush();
+		return dirty(planned);
+	}
+
+	/**
+	 * Starts a pipeline: opens the worker sessions, which wait for the files
+	 * given to {@link #offer(File)}.
+	 */
+	void start() {
+		planned = new ArrayList<Task>();
+		backlog = new ArrayList<Task>();
+		queue = new ArrayBlockingQueue<Task>(Math.max(1, QUEUE_SIZE));
+		// held back until it is known whether the files are logged
+		log = new OrderedLog(logger, false, true);
+		offered = 0;
+		producing = true;
+		sessions = openWorkers(workers);
+		logger.println("*** Checking out with [" + sessions.size() + "] sessions while listing");
+		threads = new ArrayList<Thread>();
+		for (StarTeamConnection session : sessions) {
+			Thread thread = new Thread(new Worker(session), "StarTeam checkout worker " + (threads.size() + 1));
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+	}
+
+	/**
+	 * Hands a listed file to a {@link #start() started} pipeline. Blocks while
+	 * the queue is full. This reads the cached status of the file, so it runs
+	 * on the listing thread only.
+	 *
+	 * @param f
+	 *            a file of the connection's view
+	 * @throws InterruptedIOException
+	 *             if interrupted while waiting for the workers
+	 */
+	void offer(File f) throws InterruptedIOException {
+		if (++offered == QUIET_FILES) {
+			// as many files as make the checkout quiet, drop what was held
+			log.release(true);
+		}
+		Task task = plan(f, planned.size());
+		if (task == null) {
+			return;
+		}
+		planned.add(task);
+		if (threads.isEmpty()) {
+			backlog.add(task);
+			return;
+		}
+		try {
+			boolean queued = false;
+			// stop waiting once a worker failed, the failure is reported by finish
+			while (!queued && failure == null) {
+				queued = queue.offer(task, 100, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			fail(new InterruptedIOException("Checkout interrupted"));
+			throw new InterruptedIOException("Checkout interrupted");
+		}
+	}
+
+	/**
+	 * Waits until all files given to the pipeline are checked out.
+	 *
+	 * @param quietLog
+	 *            if true, individual files are not logged, only failures.
+	 *            Ignored once {@link #QUIET_FILES} files were given.
+	 * @return files with local changes that were overwritten, in the order
+	 *         they were given
+	 * @throws IOException
+	 *             if checking out a file fails.
+	 */
+	List<File> finish(boolean quietLog) throws IOException {
+		stopWorkers();
+		log.release(quietLog);
+		if (failure == null && !backlog.isEmpty()) {
+			// no worker session, the listing is done so the connection is free
+			queue = null;
+			tasks = backlog;
+			new Worker(null).run();
+		}
+		log.flush();
+		return dirty(planned);
+	}
+
+	/**
+	 * Stops a pipeline that won't be finished, leaving files unchecked.
+	 */
+	void cancel() {
+		fail(new InterruptedIOException("Checkout cancelled"));
+		stopWorkers();
+		if (log != null) {
+			// failures of the workers are still worth seeing
+			log.release(true);
+			log.flush();
+		}
+	}
+
+	private void stopWorkers() {
+		producing = false;
+		try {
+			joinAll(threads);
+		} catch (InterruptedIOException e) {
+			// joinAll records the interruption as failure
+		} finally {
+			for (StarTeamConnection session : sessions) {
+				session.close();
+			}
+			sessions = Collections.emptyList();
+			threads = Collections.emptyList();
+		}
+	}
+
+	private List<File> dirty(List<Task> all) throws IOException {
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IOException("Checkout failed: " + failure.getMessage(), failure);
+		}
+
+		List<File> dirty = new ArrayList<File>();
+		for (Task task : all) {
+			if (task.dirty && task.done) {
+				dirty.add(task.file);
+			}
+		}
+		return dirty;
+	}
+
+	/**
+	 * Decides what to do for every file. This reads the cached status of the
+	 * files, so it runs on the calling thread only.
+	 */
+	private List<Task> plan(Collection<File> files) {
+		List<Task> result = new ArrayList<Task>();
+		for (File f : files) {
+			Task task = plan(f, result.size());
+			if (task != null) {
+				result.add(task);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return what to do for the file, null if it is current
+	 */
+	private static Task plan(File f, int index) {
+		boolean dirty = true;
+		switch (f.getStatus()) {
+			case Status.UNKNOWN:
+				dirty = false;
+			case Status.NEW:
+			case Status.MERGE:
+			case Status.MODIFIED:
+				// clobber these
+				return new Task(index, f, true, dirty);
+			case Status.MISSING:
+			case Status.OUTOFDATE:
+				// just go on and check out
+				return new Task(index, f, false, false);
+			default:
+				// By default do nothing
+				return null;
+		}
+	}
+
+	/**
+	 * Checks out the files as one request on the session of the connection.
+	 *
+	 * @return the tasks that still have to be done
+	 */
+	private List<Task> checkOutBatch(List<Task> batchTasks) {
+		final Map<Integer, Task> byItemId = new HashMap<Integer, Task>();
+		ItemList items = new ItemList();
+		for (Task task : batchTasks) {
+			if (task.delete) {
+				new java.io.File(task.path).delete();
+				if (!quiet) logger.println("[co] Deleted File: " + task.path);
+				task.delete = false;
+			}
+			byItemId.put(Integer.valueOf(task.itemId), task);
+			items.addItem(task.file);
+		}
+		logger.println("*** Checking out [" + batchTasks.size() + "] files in one batch");
+
+		CheckoutManager manager = connection.createCheckoutManager();
+		manager.addCheckoutListener(new CheckoutListener() {
+			public void onStartFile(CheckoutEvent e) {
+				// only finished files are reported
+			}
+
+			public synchronized void onNotifyProgress(CheckoutEvent e) {
+				if (!e.isSuccessful() || e.getCurrentFile() == null) {
+					return;
+				}
+				Task task = byItemId.get(Integer.valueOf(e.getCurrentFile().getItemID()));
+				if (task != null && !task.done) {
+					task.done = true;
+					if (!quiet) logger.println("[co] " + task.path + "... ok");
+				}
+			}
+		});
+		try {
+			manager.checkout(items);
+		} catch (Exception e) {
+			logger.println("*** Batch checkout failed: " + e.getMessage());
+		}
+
+		List<Task> remaining = new ArrayList<Task>();
+		for (Task task : batchTasks) {
+			if (!task.done) {
+				task.index = remaining.size();
+				remaining.add(task);
+			}
+		}
+		if (!remaining.isEmpty()) {
+			logger.println("*** [" + remaining.size() + "] files left by the batch, checking them out one by one");
+		}
+		return remaining;
+	}
+
+	private List<StarTeamConnection> openWorkers(int count) {
+		List<StarTeamConnection> result = new ArrayList<StarTeamConnection>();
+		for (int i = 0; i < count; i++) {
+			try {
+				result.add(connection.openWorker());
+			} catch (StarTeamSCMException e) {
+				logger.println("*** Could not open checkout session: " + e.getMessage());
+				break;
+			}
+		}
+		return result;
+	}
+
+	private void joinAll(List<Thread> threads) throws InterruptedIOException {
+		boolean interrupted = false;
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					// stop the workers, but wait for them before their sessions are closed
+					fail(new InterruptedIOException("Checkout interrupted"));
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void fail(Throwable t) {
+		if (failure == null) {
+			failure = t;
+		}
+	}
+
+	/**
+	 * A file to check out.
+	 */
+	private static final class Task {
+		int index;
+		final File file;
+		final String path;
+		final int itemId;
+		boolean delete;
+		final boolean dirty;
+		volatile boolean done;
+
+		Task(int index, File file, boolean delete, boolean dirty) {
+			this.index = index;
+			this.file = file;
+			this.path = file.getFullName();
+			this.itemId = file.getItemID();
+			this.delete = delete;
+			this.dirty = dirty;
+		}
+	}
+
+	/**
+	 * Takes files off the common list until all are done or one failed.
+	 */
+	private final class Worker implements Runnable {
+		/** the worker's own session, or null to use the files of the connection. */
+		private final StarTeamConnection session;
+
+		Worker(StarTeamConnection session) {
+			this.session = session;
+		}
+
+		public void run() {
+			try {
+				Task task;
+				while (failure == null && (task = take()) != null) {
+					checkOut(task);
+				}
+			} catch (InterruptedException e) {
+				fail(new InterruptedIOException("Checkout interrupted"));
+			}
+		}
+
+		/**
+		 * @return the next file, or null if there are no more
+		 */
+		private Task take() throws InterruptedException {
+			if (queue == null) {
+				int i = next.getAndIncrement();
+				return i < tasks.size() ? tasks.get(i) : null;
+			}
+			while (failure == null) {
+				Task task = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (task != null) {
+					return task;
+				}
+				if (!producing) {
+					// files offered before the end of the listing are in the queue by now
+					return queue.poll();
+				}
+			}
+			return null;
+		}
+
+		private void checkOut(Task task) {
+			// no details once the log is known to leave them out
+			StringWriter details = new StringWriter();
+			PrintWriter out = log.isQuiet() ? null : new PrintWriter(details);
+			StringWriter problem = new StringWriter();
+			try {
+				if (task.delete) {
+					new java.io.File(task.path).delete();
+					if (out != null) out.println("[co] Deleted File: " + task.path);
+				}
+				if (out != null) out.println("[co] " + task.path + "... attempt");
+				if (session == null) {
+					task.file.checkout(Item.LockType.UNCHANGED, // leave the lock as is, changing lock for item in the past is impossible
+							true, // use timestamp from local time
+							true, // convert EOL to native format
+							true); // update status
+				} else {
+					File f = session.findFile(task.itemId);
+					if (f == null) {
+						throw new IOException("Couldn't find item " + task.itemId + " in checkout session");
+					}
+					f.checkoutTo(new java.io.File(task.path), Item.LockType.UNCHANGED, true, true, true);
+				}
+				task.done = true;
+				if (out != null) out.println("[co] " + task.path + "... ok");
+			} catch (Throwable t) {
+				problem.write("[checkout] [exception] [Problem checking out file: "
+						+ task.path
+						+ "] \n"
+						+ ExceptionUtils.getFullStackTrace(t) + "\n");
+				fail(t);
+			} finally {
+				if (out != null) out.flush();
+				log.add(task.index, details.toString(), problem.toString());
+			}
+		}
+	}
+
+	/**
+	 * Writes the output of the files in their original order. Details of
+	 * files are left out in quiet mode, failures are always written.
+	 */
+	private static final class OrderedLog {
+		private final PrintStream logger;
+		/** details and failure of every file not written yet. */
+		private final Map<Integer, String[]> pending = new HashMap<Integer, String[]>();
+		private int next;
+		private volatile boolean quiet;
+		/** if true, nothing is written until {@link #release(boolean)}. */
+		private boolean held;
+
+		OrderedLog(PrintStream logger, boolean quiet, boolean held) {
+			this.logger = logger;
+			this.quiet = quiet;
+			this.held = held;
+		}
+
+		synchronized void add(int index, String details, String problem) {
+			pending.put(Integer.valueOf(index), new String[] { details, problem });
+			if (!held) {
+				writeInOrder();
+			}
+		}
+
+		/**
+		 * @return true if details of files are left out
+		 */
+		boolean isQuiet() {
+			return quiet;
+		}
+
+		/**
+		 * Writes the output held back so far, and any output from now on.
+		 * Once quiet, the log stays quiet.
+		 */
+		synchronized void release(boolean quietLog) {
+			quiet = quiet || quietLog;
+			held = false;
+			writeInOrder();
+		}
+
+		private void writeInOrder() {
+			String[] first;
+			while ((first = pending.remove(Integer.valueOf(next))) != null) {
+				write(first);
+				next++;
+			}
+		}
+
+		private void write(String[] text) {
+			if (!quiet) {
+				logger.print(text[0]);
+			}
+			logger.print(text[1]);
+		}
+
+		/**
+		 * Writes whatever is left after the workers stopped.
+		 */
+		synchronized void flush() {
+			for (Integer index : new TreeSet<Integer>(pending.keySet())) {
+				write(pending.get(index));
+			}
+			pending.clear();
+		}
+	}
+}
@@ -10,31 +10,33 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.commons.lang.exception.ExceptionUtils;
-
+import com.starbase.starteam.CheckoutManager;
+import com.starbase.starteam.CheckoutOptions;
 import com.starbase.starteam.ClientApplication;
 import com.starbase.starteam.File;
 import com.starbase.starteam.Folder;
 import com.starbase.starteam.Item;
+import com.starbase.starteam.ItemList;
 import com.starbase.starteam.LogonException;
 import com.starbase.starteam.Project;
 import com.starbase.starteam.PropertyNames;
 import com.starbase.starteam.Server;
-import com.starbase.starteam.ServerAdministration;
 import com.starbase.starteam.ServerConfiguration;
 import com.starbase.starteam.ServerInfo;
-import com.starbase.starteam.Status;
-import com.starbase.starteam.User;
-import com.starbase.starteam.UserAccount;
 import com.starbase.starteam.View;
+import com.starbase.starteam.ViewConfiguration;
 import com.starbase.starteam.vts.comm.NetMonitor;
 import com.starbase.util.OLEDate;
 
@@ -53,7 +55,44 @@ import com.starbase.util.OLEDate;
 public class StarTeamConnection implements Serializable {
 	private static final long serialVersionUID = 1L;
 
-	public static final String FILE_POINT_FILENAME = "starteam-filepoints.csv";
+	public static final String FILE_POINT_FILENAME = "starteam-filepoints.dat";
+
+	/**
+	 * File points of builds made before the binary format, still read.
+	 */
+	public static final String LEGACY_FILE_POINT_FILENAME = "starteam-filepoints.csv";
+
+	public static final String HIGH_WATER_MARK_FILENAME = "starteam-highwatermark.csv";
+
+	public static final String WORKSPACE_FILENAME = "starteam-workspace.txt";
+
+	/**
+	 * If true, the change log of a first build lists every file of the view
+	 * instead of summarizing the import. Set by the system property
+	 * <tt>hudson.plugins.starteam.StarTeamConnection.perFileInitialChangeLog</tt>.
+	 */
+	static final boolean PER_FILE_INITIAL_CHANGE_LOG = Boolean.getBoolean(StarTeamConnection.class.getName() + ".perFileInitialChangeLog");
+
+	/**
+	 * Number of files whose change log properties are fetched in one request.
+	 */
+	static final int CHANGE_LOG_BATCH_SIZE = 500;
+
+	/**
+	 * IDs of the projects found by {@link #findProjectOnServer}, by server,
+	 * user and project name. A project is reopened by its ID, so the list of all
+	 * projects of the server is only read when a project is seen for the
+	 * first time, or when the ID no longer leads to a project of that name.
+	 */
+	private static final Map<String, Integer> PROJECT_IDS = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * IDs of the views found by {@link #findViewInProject}, by server, user,
+	 * project ID and view name. Used like {@link #PROJECT_IDS}. The user is
+	 * part of the keys as users may be allowed to see different projects and
+	 * views.
+	 */
+	private static final Map<String, Integer> VIEW_IDS = new ConcurrentHashMap<String, Integer>();
 
 	private final String hostName;
 	private final int port;
@@ -68,7 +107,10 @@ public class StarTeamConnection implements Serializable {
 	private transient View view;
 	private transient Folder rootFolder;
 	private transient Project project;
-	private transient boolean canReadUserAccts = true;
+	private transient StarTeamSession session;
+	private transient ViewConfiguration viewConfiguration;
+	/** checkout started by {@link #computeChangeSet} in pipeline mode, finished by {@link #checkOut}. */
+	private transient StarTeamCheckoutEngine pipeline;
 
 	static {
 		try {
@@ -176,12 +218,44 @@ public class StarTeamConnection implements Serializable {
 
 	/**
 	 * Initialize the connection. This means logging on to the server and
-	 * finding the project, view and folder we want.
+	 * finding the project, view and folder we want. A session left by an
+	 * earlier connection with the same identity is reused if there is one.
 	 * 
 	 * @param buildNumber a job build number, or -1 if not associated with a job.
 	 * @throws StarTeamSCMException if logging on fails.
 	 */
 	public void initialize(int buildNumber) throws StarTeamSCMException {
+		open(buildNumber);
+
+		// Cache some folder data. Comments and authors are only needed for
+		// the change log, see populateChangeLogProperties
+		final PropertyNames pnames = rootFolder.getPropertyNames();
+		final String[] folderPropsToCache = new String[] { pnames.FOLDER_WORKING_FOLDER };
+		if (!StarTeamCheckoutEngine.PIPELINE) {
+			// in pipeline mode each folder is populated as it is listed
+			rootFolder.populateNow(server.getTypeNames().FILE, getFilePropsToCache(), -1);
+		}
+		rootFolder.populateNow(server.getTypeNames().FOLDER, folderPropsToCache, -1);
+	}
+
+	/**
+	 * @return the file properties needed to compute the change set
+	 */
+	private String[] getFilePropsToCache() {
+		final PropertyNames pnames = rootFolder.getPropertyNames();
+		return new String[] { pnames.FILE_LOCAL_FILE_EXISTS, pnames.FILE_LOCAL_TIMESTAMP, pnames.FILE_NAME,
+				pnames.FILE_FILE_TIME_AT_CHECKIN, pnames.MODIFIED_TIME, pnames.FILE_STATUS,
+		};
+	}
+
+	/**
+	 * Log on (or reuse a session) and find the view and folder, without
+	 * caching any file data.
+	 * 
+	 * @param buildNumber a job build number, or -1 if not associated with a job.
+	 * @throws StarTeamSCMException if logging on fails.
+	 */
+	void open(int buildNumber) throws StarTeamSCMException {
 		/* 
 		   Identify this as the StarTeam Hudson Plugin 
 		   so that it can support the new AppControl capability in StarTeam 2009
@@ -192,39 +266,156 @@ public class StarTeamConnection implements Serializable {
 		   to the server is established.
 		*/ 
 		ClientApplication.setName("StarTeam Plugin for Jenkins");
-		
-		server = new Server(createServerInfo());
-		server.connect();
-		try {
-			server.logOn(userName, password);
-		} catch (LogonException e) {
-			throw new StarTeamSCMException("Could not log on: " + e.getErrorMessage());
-		}
 
-		project = findProjectOnServer(server, projectName);
-		view = findViewInProject(project, viewName);
+		attachSession();
 		if (configSelector != null)
 		{
-			View configuredView = null;
 			try {
-				configuredView = configSelector.configView(view, buildNumber);
+				viewConfiguration = configSelector.createConfiguration(view, buildNumber);
 			} catch (ParseException e) {
 				throw new StarTeamSCMException("Could not correctly parse configuration date: " + e.getMessage());
 			}
-			if (configuredView != null)
-				view = configuredView;
+			view = new View(view, viewConfiguration);
 		}
 		rootFolder = StarTeamFunctions.findFolderInView(view, folderName);
+	}
 
-		// Cache some folder data
+	/**
+	 * Poll: compares the files of an {@link #open(int) opened} connection with
+	 * the file points of the last build. Only the names of files and folders
+	 * are fetched, so the local status of the files is never computed.
+	 *
+	 * @param workspace the workspace the file points were recorded in
+	 * @param historicFilePoints file points of the last build, may be null
+	 * @param logger a logger for consuming log messages
+	 * @return true if files were changed, added or removed since the last build.
+	 */
+	boolean hasChanges(java.io.File workspace, Collection<StarTeamFilePoint> historicFilePoints, PrintStream logger) {
 		final PropertyNames pnames = rootFolder.getPropertyNames();
-		final String[] filePropsToCache = new String[] { pnames.FILE_LOCAL_FILE_EXISTS, pnames.FILE_LOCAL_TIMESTAMP, pnames.FILE_NAME,
-				pnames.FILE_FILE_TIME_AT_CHECKIN, pnames.MODIFIED_TIME, pnames.MODIFIED_USER_ID, pnames.FILE_STATUS,
-				pnames.COMMENT,
-		};
-		final String[] folderPropsToCache = new String[] { pnames.FOLDER_WORKING_FOLDER };
-		rootFolder.populateNow(server.getTypeNames().FILE, filePropsToCache, -1);
-		rootFolder.populateNow(server.getTypeNames().FOLDER, folderPropsToCache, -1);
+		rootFolder.populateNow(server.getTypeNames().FILE, new String[] { pnames.FILE_NAME }, -1);
+		rootFolder.populateNow(server.getTypeNames().FOLDER, new String[] { pnames.FOLDER_WORKING_FOLDER }, -1);
+		StarTeamFunctions.mapToWorkspace(rootFolder, workspace);
+		return new StarTeamPollComparator(historicFilePoints, logger).hasChanges(rootFolder);
+	}
+
+	/**
+	 * Like {@link #hasChanges(java.io.File, Collection, PrintStream)}, for
+	 * file points recorded in a workspace of another node. The path of the
+	 * workspace is not resolved locally, and the paths are compared relative
+	 * to it.
+	 *
+	 * @param workspacePath the workspace as given by the node that recorded the file points
+	 * @param historicFilePoints file points of the last build, may be null
+	 * @param logger a logger for consuming log messages
+	 * @return true if files were added, removed or changed since the last build.
+	 */
+	boolean hasChanges(String workspacePath, Collection<StarTeamFilePoint> historicFilePoints, PrintStream logger) {
+		final PropertyNames pnames = rootFolder.getPropertyNames();
+		rootFolder.populateNow(server.getTypeNames().FILE, new String[] { pnames.FILE_NAME }, -1);
+		rootFolder.populateNow(server.getTypeNames().FOLDER, new String[] { pnames.FOLDER_WORKING_FOLDER }, -1);
+		String alternatePath = rootFolder.getAlternatePathFragment();
+		rootFolder.setAlternatePathFragment(alternatePath == null ? workspacePath : workspacePath + "/" + alternatePath);
+		return new StarTeamPollComparator(historicFilePoints, workspacePath, logger).hasChanges(rootFolder);
+	}
+
+	/**
+	 * Incremental poll: checks the files of an {@link #open(int) opened}
+	 * connection against the mark of the last checkout. The modification time
+	 * of all files is fetched in one call, nothing else. The check stops at
+	 * the first file modified after the mark; otherwise the files of the view
+	 * are compared with the digest of the mark.
+	 *
+	 * @param mark the mark stored by the last checkout
+	 * @param logger a logger for consuming log messages
+	 * @return true if files were changed, added or removed since the mark.
+	 */
+	boolean hasChangesSince(StarTeamHighWaterMark mark, PrintStream logger) {
+		rootFolder.populateNow(server.getTypeNames().FILE, new String[] { rootFolder.getPropertyNames().MODIFIED_TIME }, -1);
+		Collection<File> files = StarTeamFunctions.listAllFiles(rootFolder);
+		for (File f : files) {
+			if (f.getModifiedTime().getLongValue() > mark.getModifiedTime()) {
+				logger.println("*** " + f.getName() + " was modified since the last checkout");
+				return true;
+			}
+		}
+		if (files.size() != mark.getFileCount() || !StarTeamHighWaterMark.digest(files).equals(mark.getDigest())) {
+			logger.println("*** Files were added, removed or moved since the last checkout");
+			return true;
+		}
+		return false;
+	}
+
+	private void attachSession() throws StarTeamSCMException {
+		session = StarTeamSessionPool.acquire(this);
+		if (session == null) {
+			session = openSession();
+		}
+		server = session.getServer();
+		project = session.getProject();
+		view = session.getView();
+	}
+
+	/**
+	 * Log on to the server and find the project and view.
+	 *
+	 * @return a new session
+	 * @throws StarTeamSCMException if logging on fails.
+	 */
+	private StarTeamSession openSession() throws StarTeamSCMException {
+		Server newServer = new Server(createServerInfo());
+		newServer.connect();
+		try {
+			newServer.logOn(userName, password);
+			Project newProject = findProjectOnServer(newServer, userName, projectName);
+			View newView = findViewInProject(newProject, userName, viewName);
+			return new StarTeamSession(newServer, newProject, newView);
+		} catch (LogonException e) {
+			newServer.disconnect();
+			throw new StarTeamSCMException("Could not log on: " + e.getErrorMessage());
+		} catch (StarTeamSCMException e) {
+			newServer.disconnect();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens another connection to the same view, configured like this one.
+	 * The configuration selector is not run again, so a label created for this
+	 * build is reused. The folder tree of the new connection is not populated,
+	 * files are looked up with {@link #findFile(int)}.
+	 *
+	 * @return an initialized connection, to be closed by the caller
+	 * @throws StarTeamSCMException if logging on fails.
+	 */
+	StarTeamConnection openWorker() throws StarTeamSCMException {
+		StarTeamConnection worker = new StarTeamConnection(this, configSelector);
+		worker.attachSession();
+		worker.viewConfiguration = viewConfiguration;
+		if (viewConfiguration != null) {
+			worker.view = new View(worker.view, viewConfiguration);
+		}
+		return worker;
+	}
+
+	/**
+	 * @return a checkout manager for the view of this connection, with the
+	 *         same options as a checkout of a single file.
+	 */
+	CheckoutManager createCheckoutManager() {
+		CheckoutOptions options = new CheckoutOptions(view);
+		options.setLockType(Item.LockType.UNCHANGED); // leave the lock as is, changing lock for item in the past is impossible
+		options.setTimeStampNow(true); // use timestamp from local time
+		options.setEOLConversionEnabled(true); // convert EOL to native format
+		options.setUpdateStatus(true); // update status
+		return view.createCheckoutManager(options);
+	}
+
+	/**
+	 * @param itemId the item ID of a file
+	 * @return the file with the given item ID in the view of this connection, or null.
+	 */
+	File findFile(int itemId) {
+		return (File) view.findItem(server.getTypeNames().FILE, itemId);
 	}
 
 	/**
@@ -235,58 +426,37 @@ public class StarTeamConnection implements Serializable {
 	 * @throws IOException if checkout fails.
 	 */
 	public void checkOut(StarTeamChangeSet changeSet, PrintStream logger, FilePath filePointFilePath) throws IOException {
+		checkOut(changeSet, logger, filePointFilePath, filePointFilePath.getParent().child(HIGH_WATER_MARK_FILENAME));
+	}
+
+	/**
+	 * checkout the files from starteam
+	 *
+	 * @param changeSet a description of changes  
+	 * @param filePointFilePath A FilePath reprensenting the file points file where to store the change set
+	 * @param highWaterMarkFilePath A FilePath reprensenting the file where to store the high-water mark
+	 * @throws IOException if checkout fails.
+	 */
+	void checkOut(StarTeamChangeSet changeSet, PrintStream logger, FilePath filePointFilePath, FilePath highWaterMarkFilePath) throws IOException {
 	    logger.println("*** Performing checkout on [" + changeSet.getFilesToCheckout().size() + "] files");
-	    boolean quietCheckout = changeSet.getFilesToCheckout().size() >= 2000;
+	    boolean quietCheckout = changeSet.getFilesToCheckout().size() >= StarTeamCheckoutEngine.QUIET_FILES;
 	    if (quietCheckout) {
-	      logger.println("*** More than 2000 files, quiet mode enabled");
+	      logger.println("*** More than " + StarTeamCheckoutEngine.QUIET_FILES + " files, quiet mode enabled");
 	    }
-		for (File f : changeSet.getFilesToCheckout()) {
-			boolean dirty = true;
-			switch (f.getStatus()) {
-				case Status.UNKNOWN:
-					dirty = false;
-				case Status.NEW:
-				case Status.MERGE:
-				case Status.MODIFIED:
-					// clobber these
-					new java.io.File(f.getFullName()).delete();
-				    if (!quietCheckout) logger.println("[co] Deleted File: " + f.getFullName());
-					break;
-				case Status.MISSING:
-				case Status.OUTOFDATE:
-					dirty = false;
-					// just go on and check out
-					break;
-				default:
-					// By default do nothing, go to next iteration
-					continue;
-			}
-			if (!quietCheckout)
-				logger.println("[co] " + f.getFullName() + "... attempt");
-			try {
-				f.checkout(Item.LockType.UNCHANGED, // leave the lock as is, changing lock for item in the past is impossible
-						true, // use timestamp from local time
-						true, // convert EOL to native format
-						true); // update status
-			} catch (IOException e) {
-				logger
-						.print("[checkout] [exception] [Problem checking out file: "
-								+ f.getFullName()
-								+ "] \n"
-								+ ExceptionUtils.getFullStackTrace(e) + "\n");
-				throw e;
-			} catch (RuntimeException e) {
-				logger
-						.print("[checkout] [exception] [Problem checking out file: "
-								+ f.getFullName()
-								+ "] \n"
-								+ ExceptionUtils.getFullStackTrace(e) + "\n");
-				throw e;
-			}
-			if (dirty) {
-				changeSet.getChanges().add(FileToStarTeamChangeLogEntry(f,"dirty"));
-			}
-			if (!quietCheckout) logger.println("[co] " + f.getFullName() + "... ok");
+		List<File> dirty;
+		if (pipeline != null) {
+			// the download started while the files were listed
+			StarTeamCheckoutEngine engine = pipeline;
+			pipeline = null;
+			dirty = engine.finish(quietCheckout);
+		} else {
+			StarTeamCheckoutEngine engine = new StarTeamCheckoutEngine(this, logger, quietCheckout,
+					StarTeamCheckoutEngine.WORKERS, StarTeamCheckoutEngine.BATCH);
+			dirty = engine.checkOut(changeSet.getFilesToCheckout());
+		}
+		populateChangeLogProperties(dirty);
+		for (File f : dirty) {
+			changeSet.getChanges().add(FileToStarTeamChangeLogEntry(f,"dirty"));
 		}
 		logger.println("*** removing [" + changeSet.getFilesToRemove().size() + "] files");
 		boolean quietDelete = changeSet.getFilesToRemove().size() > 100;
@@ -303,14 +473,29 @@ public class StarTeamConnection implements Serializable {
 		}
 		logger.println("*** storing change set");
 		OutputStream os = null;
+		MessageDigest md = StarTeamFilePointSnapshot.newDigest();
 		try {
-			os = new BufferedOutputStream(filePointFilePath.write());
+			os = new DigestOutputStream(new BufferedOutputStream(filePointFilePath.write()), md);
 			StarTeamFilePointFunctions.storeCollection(os, changeSet.getFilePointsToRemember());
 		} catch (InterruptedException e) {
 			logger.println( "unable to store change set " +  e.getMessage()) ;
 		}finally{
 			if(os !=null){
 				os.close();
+				changeSet.setFilePointDigest(StarTeamFilePointSnapshot.toHex(md.digest()));
+			}
+		}
+		if (changeSet.getHighWaterMark() != null) {
+			os = null;
+			try {
+				os = new BufferedOutputStream(highWaterMarkFilePath.write());
+				changeSet.getHighWaterMark().store(os);
+			} catch (InterruptedException e) {
+				logger.println( "unable to store high-water mark " +  e.getMessage()) ;
+			}finally{
+				if(os !=null){
+					os.close();
+				}
 			}
 		}
 		logger.println("***checkout done");
@@ -328,35 +513,7 @@ public class StarTeamConnection implements Serializable {
 	 * @return the name of the user as provided by the StarTeam Server
 	 */
 	public String getUsername(int userId) {
-		User stUser = server.getUser(userId);
-		String userName =stUser.getName();
-		ServerAdministration srvAdmin = server.getAdministration();
-		UserAccount[] userAccts = null;
-		if (canReadUserAccts) {
-			try {
-				userAccts = srvAdmin.getUserAccounts();
-			} catch (Exception e) {
-				// System.out.println("WARNING: Looks like this user does not have the permission to access UserAccounts on the StarTeam Server!");
-				// System.out.println("WARNING: Please contact your administrator and ask to be given the permission \"Administer User Accounts\" on the server.");
-				// System.out.println("WARNING: Defaulting to just using User Full Names which breaks the ability to send email to the individuals who break the build in Hudson!");
-				canReadUserAccts = false;
-			}
-		}
-		if (userAccts != null) {
-			for (int i=0; i<userAccts.length; i++) {
-				UserAccount ua = userAccts[i];
-				if (ua.getName().equals(userName)) {
-					System.out.println("INFO: From \'" + userName + "\' found existing user LogonName = " +
-							ua.getLogOnName() + " with ID \'" + ua.getID() + "\' and email \'" + ua.getEmailAddress() +"\'");
-					return ua.getLogOnName();
-				}
-			}
-		} else {
-			// Since the user account running the build does not have user admin perms
-			// use the User Full Name
-			return userName;
-		}
-		return "unknown";
+		return StarTeamUserDirectory.get(hostName + ":" + port + ":" + userName).getUsername(server, userId);
 	}
 
 	public Folder getRootFolder() {
@@ -369,13 +526,28 @@ public class StarTeamConnection implements Serializable {
 
 	/**
 	 * @param server
+	 * @param username the user logged on to the server
 	 * @param projectname
 	 * @return Project specified by the projectname
 	 * @throws StarTeamSCMException
 	 */
-	static Project findProjectOnServer(final Server server, final String projectname) throws StarTeamSCMException {
+	static Project findProjectOnServer(final Server server, final String username, final String projectname) throws StarTeamSCMException {
+		String key = server.getAddress() + ":" + server.getPort() + ":" + username + ":" + projectname;
+		Integer id = PROJECT_IDS.get(key);
+		if (id != null) {
+			try {
+				Project project = server.findProject(id.intValue());
+				if (project != null && project.getName().equals(projectname)) {
+					return project;
+				}
+			} catch (RuntimeException e) {
+				// deleted, or not accessible to this user
+			}
+			PROJECT_IDS.remove(key);
+		}
 		for (Project project : server.getProjects()) {
 			if (project.getName().equals(projectname)) {
+				PROJECT_IDS.put(key, Integer.valueOf(project.getID()));
 				return project;
 			}
 		}
@@ -384,13 +556,29 @@ public class StarTeamConnection implements Serializable {
 
 	/**
 	 * @param project
+	 * @param username the user logged on to the server
 	 * @param viewname
 	 * @return
 	 * @throws StarTeamSCMException
 	 */
-	static View findViewInProject(final Project project, final String viewname) throws StarTeamSCMException {
+	static View findViewInProject(final Project project, final String username, final String viewname) throws StarTeamSCMException {
+		Server server = project.getServer();
+		String key = server.getAddress() + ":" + server.getPort() + ":" + username + ":" + project.getID() + ":" + viewname;
+		Integer id = VIEW_IDS.get(key);
+		if (id != null) {
+			try {
+				View view = project.findView(id.intValue());
+				if (view != null && view.getName().equals(viewname)) {
+					return view;
+				}
+			} catch (RuntimeException e) {
+				// deleted, or not accessible to this user
+			}
+			VIEW_IDS.remove(key);
+		}
 		for (View view : project.getAccessibleViews()) {
 			if (view.getName().equals(viewname)) {
+				VIEW_IDS.put(key, Integer.valueOf(view.getID()));
 				return view;
 			}
 		}
@@ -398,18 +586,34 @@ public class StarTeamConnection implements Serializable {
 	}
 
 	/**
-	 * Close the connection.
+	 * Close the connection. The session is handed back to the
+	 * {@link StarTeamSessionPool} for reuse.
 	 */
 	public void close() {
+		if (pipeline != null) {
+			pipeline.cancel();
+			pipeline = null;
+		}
+		if (session == null) {
+			return;
+		}
 		if (server.isConnected()) {
 			if (rootFolder != null)	{
 				rootFolder.discardItems(rootFolder.getTypeNames().FILE, -1);
 				rootFolder.discardItems(rootFolder.getTypeNames().FOLDER, -1);
 			}
-			view.discard();
-			project.discard();
-			server.disconnect();
+			if (view != session.getView()) {
+				view.discard();
+			}
+			StarTeamSessionPool.release(this, session);
+		} else {
+			session.close();
 		}
+		session = null;
+		server = null;
+		project = null;
+		view = null;
+		rootFolder = null;
 	}
 
 	@Override
@@ -417,6 +621,14 @@ public class StarTeamConnection implements Serializable {
 		close();
 	}
 
+	/**
+	 * @return the identity of the sessions this connection can use: the
+	 *         server, user, password, project and view, but not the folder.
+	 */
+	List<Object> getSessionKey() {
+		return Arrays.<Object> asList(hostName, Integer.valueOf(port), userName, password, projectName, viewName);
+	}
+
 	@Override
 	public boolean equals(Object object) {
 		if (null == object)
@@ -444,6 +656,11 @@ public class StarTeamConnection implements Serializable {
 	}
 
 	  /**
+	 * In pipeline mode (see {@link StarTeamCheckoutEngine#PIPELINE}) this
+	 * also starts checking out the files while they are listed. The checkout
+	 * is finished by {@link #checkOut}, or cancelled by {@link #close()}.
+	 * Everything read from the workspace is read before that.
+	 *
 	 * @param rootFolder main project directory
 	 * @param workspace a workspace directory
 	 * @param historicFilePoints a collection containing File Points to be compared (previous build)
@@ -453,25 +670,39 @@ public class StarTeamConnection implements Serializable {
 	 * @throws IOException
 	 */
 	public StarTeamChangeSet computeChangeSet(Folder rootFolder, java.io.File workspace, final Collection<StarTeamFilePoint> historicFilePoints, PrintStream logger) throws StarTeamSCMException, IOException {
+	    final boolean firstBuild = historicFilePoints == null || historicFilePoints.isEmpty();
+	    // without file points of the last build, files unknown to StarTeam are
+	    // found by scanning the workspace, before any file is checked out
+	    final Collection<java.io.File> fileSystemFiles = firstBuild ? StarTeamFilePointFunctions.listAllFiles(workspace) : null;
+
 	    // --- compute changes as per starteam
 
-	    final Collection<com.starbase.starteam.File> starteamFiles = StarTeamFunctions.listAllFiles(rootFolder, workspace);
+	    final Collection<com.starbase.starteam.File> starteamFiles;
+	    if (StarTeamCheckoutEngine.PIPELINE) {
+	    	starteamFiles = listAndCheckOut(rootFolder, workspace, logger);
+	    } else {
+	    	starteamFiles = StarTeamFunctions.listAllFiles(rootFolder, workspace);
+	    }
 	    final Map<java.io.File, com.starbase.starteam.File> starteamFileMap = StarTeamFunctions.convertToFileMap(starteamFiles);
 	    final Collection<java.io.File> starteamFileSet = starteamFileMap.keySet();
 	    final Collection<StarTeamFilePoint> starteamFilePoint = StarTeamFilePointFunctions.convertFilePointCollection(starteamFiles);
 
-	    final Collection<java.io.File> fileSystemFiles = StarTeamFilePointFunctions.listAllFiles(workspace);
-	    final Collection<java.io.File> fileSystemRemove = new TreeSet<java.io.File>(fileSystemFiles);
-	    fileSystemRemove.removeAll(starteamFileSet);
-
 	    final StarTeamChangeSet changeSet = new StarTeamChangeSet();
 	    changeSet.setFilesToCheckout(starteamFiles);
-	    changeSet.setFilesToRemove(fileSystemRemove);
+	    if (!firstBuild) {
+	    	// the previous checkout's file points tell what the plugin wrote, build output is left alone
+	    	changeSet.setFilesToRemove(StarTeamFilePointFunctions.listOrphans(workspace, starteamFilePoint, historicFilePoints));
+	    } else {
+	    	final Collection<java.io.File> fileSystemRemove = new TreeSet<java.io.File>(fileSystemFiles);
+	    	fileSystemRemove.removeAll(starteamFileSet);
+	    	changeSet.setFilesToRemove(fileSystemRemove);
+	    }
 	    changeSet.setFilePointsToRemember(starteamFilePoint);
+	    changeSet.setHighWaterMark(StarTeamHighWaterMark.compute(starteamFiles));
 
 	    // --- compute differences as per historic storage file
 
-	    if (historicFilePoints != null && !historicFilePoints.isEmpty()) {
+	    if (!firstBuild) {
 
 	      try {
 
@@ -482,16 +713,120 @@ public class StarTeamConnection implements Serializable {
 	      } catch (Throwable t) {
 	        t.printStackTrace(logger);
 	      }
-	    } else {
+	    } else if (PER_FILE_INITIAL_CHANGE_LOG) {
+	    	populateChangeLogProperties(starteamFiles);
 	    	for (File file: starteamFiles)
 	    	{
 	    		changeSet.addChange(FileToStarTeamChangeLogEntry(file));
 	    	}
+	    } else {
+	    	// first build: per-file entries (and their authors) start with the next one
+	    	changeSet.addChange(initialImportEntry(rootFolder, starteamFiles));
 	    }
 
 	    return changeSet;
 	  }
 
+	/**
+	 * Lists the files like {@link StarTeamFunctions#listAllFiles(Folder, java.io.File)},
+	 * populating one top-level folder with all its subfolders at a time, and
+	 * starts checking out the files that are not current while the remaining
+	 * folders are listed. The checkout is finished by {@link #checkOut}; if
+	 * listing fails, it is cancelled.
+	 *
+	 * @param rootFolder the folder to list
+	 * @param workspace a workspace directory
+	 * @param logger a logger for consuming log messages
+	 * @return all files in the folder and its subfolders
+	 * @throws IOException if interrupted
+	 */
+	private Collection<File> listAndCheckOut(Folder rootFolder, java.io.File workspace, PrintStream logger) throws IOException {
+		StarTeamFunctions.mapToWorkspace(rootFolder, workspace);
+		pipeline = new StarTeamCheckoutEngine(this, logger, false, StarTeamCheckoutEngine.WORKERS, false);
+		pipeline.start();
+		boolean listed = false;
+		try {
+			Collection<File> result = new ArrayList<File>();
+			String[] props = getFilePropsToCache();
+			// same order as StarTeamFunctions.listAllFiles: subfolders first, depth first
+			for (Folder f : rootFolder.getSubFolders()) {
+				// one request per top-level folder rather than per folder
+				f.populateNow(server.getTypeNames().FILE, props, -1);
+				offerAll(f, result);
+			}
+			rootFolder.populateNow(server.getTypeNames().FILE, props, 0);
+			offerFiles(rootFolder, result);
+			listed = true;
+			return result;
+		} finally {
+			if (!listed) {
+				// stop the workers and close their sessions
+				pipeline.cancel();
+				pipeline = null;
+			}
+		}
+	}
+
+	private void offerAll(Folder folder, Collection<File> result) throws IOException {
+		for (Folder f : folder.getSubFolders()) {
+			offerAll(f, result);
+		}
+		offerFiles(folder, result);
+	}
+
+	private void offerFiles(Folder folder, Collection<File> result) throws IOException {
+		for (Item i : folder.getItems(server.getTypeNames().FILE)) {
+			File f = (File) i;
+			result.add(f);
+			pipeline.offer(f);
+		}
+	}
+
+	/**
+	 * @param rootFolder the folder the files were listed from
+	 * @param files all files of the folder
+	 * @return a single entry summarizing the files.
+	 */
+	StarTeamChangeLogEntry initialImportEntry(Folder rootFolder, Collection<File> files) {
+		// sizes in one request rather than one per file
+		rootFolder.populateNow(server.getTypeNames().FILE, new String[] { rootFolder.getPropertyNames().FILE_SIZE }, -1);
+		long totalSize = 0;
+		for (File f : files) {
+			totalSize += f.getSizeEx();
+		}
+		List<String> folders = new ArrayList<String>();
+		for (Folder f : rootFolder.getSubFolders()) {
+			folders.add(f.getName());
+		}
+		return StarTeamChangeLogEntry.initialImport(rootFolder.getFolderHierarchy(), folders, files.size(), totalSize, new Date());
+	}
+
+	/**
+	 * Fetches the comment and author of the given files, which
+	 * {@link #initialize(int)} leaves out because only changed files need
+	 * them, in a few requests instead of one per file.
+	 *
+	 * @param files files of the view
+	 */
+	void populateChangeLogProperties(Collection<File> files) {
+		if (files.isEmpty()) {
+			return;
+		}
+		final PropertyNames pnames = rootFolder.getPropertyNames();
+		final String[] props = new String[] { pnames.COMMENT, pnames.MODIFIED_USER_ID };
+		ItemList batch = new ItemList();
+		for (File f : files) {
+			batch.addItem(f);
+			if (batch.size() == CHANGE_LOG_BATCH_SIZE) {
+				batch.populateNow(props);
+				batch = new ItemList();
+			}
+		}
+		if (batch.size() > 0) {
+			batch.populateNow(props);
+		}
+	}
+
 	public StarTeamChangeLogEntry FileToStarTeamChangeLogEntry (File f)
 	{
 		return FileToStarTeamChangeLogEntry(f, "change");
@@ -506,56 +841,75 @@ public class StarTeamConnection implements Serializable {
 		Date date = new Date(f.getModifiedTime().getLongValue());
 		String fileName = f.getName();		
 
-		return new StarTeamChangeLogEntry(fileName,revisionNumber,date,username,msg, change);
+		StarTeamChangeLogEntry entry = new StarTeamChangeLogEntry(fileName,revisionNumber,date,username,msg, change);
+		entry.setPath(relativePath(f.getFullName(), fileName));
+		return entry;
 	}
 
-	public StarTeamChangeSet computeDifference(final Collection<StarTeamFilePoint> currentFilePoint, final Collection<StarTeamFilePoint> historicFilePoint, StarTeamChangeSet changeSet, Map<java.io.File, com.starbase.starteam.File> starteamFileMap) {
-		  final Map<java.io.File, StarTeamFilePoint> starteamFilePointMap = StarTeamFilePointFunctions.convertToFilePointMap(currentFilePoint);
-		  Map<java.io.File, StarTeamFilePoint> historicFilePointMap = StarTeamFilePointFunctions.convertToFilePointMap(historicFilePoint);
-	
-		  final Set<java.io.File> starteamOnly = new HashSet<java.io.File>();
-		  starteamOnly.addAll(starteamFilePointMap.keySet());
-		  starteamOnly.removeAll(historicFilePointMap.keySet());
-	
-		  final Set<java.io.File> historicOnly = new HashSet<java.io.File>();
-		  historicOnly.addAll(historicFilePointMap.keySet());
-		  historicOnly.removeAll(starteamFilePointMap.keySet());
-	
-		  final Set<java.io.File> common = new HashSet<java.io.File>();
-		  common.addAll(starteamFilePointMap.keySet());
-		  common.removeAll(starteamOnly);
+	/**
+	 * @param fullName the path of a file in the workspace
+	 * @param name the name of the file
+	 * @return the path relative to the folder of this connection, with '/' as
+	 *         separator, or the name if the file is not in the folder.
+	 */
+	private String relativePath(String fullName, String name) {
+		String root = rootFolder != null ? rootFolder.getAlternatePathFragment() : null;
+		if (root != null && fullName != null) {
+			String prefix = root + java.io.File.separator;
+			if (StarTeamFilePointTable.startsWithPath(fullName, prefix)) {
+				return fullName.substring(prefix.length()).replace('\\', '/');
+			}
+		}
+		return name;
+	}
+
+	public StarTeamChangeSet computeDifference(final Collection<StarTeamFilePoint> currentFilePoint, final Collection<StarTeamFilePoint> historicFilePoint, final StarTeamChangeSet changeSet, final Map<java.io.File, com.starbase.starteam.File> starteamFileMap) {
+		  final StarTeamFilePointTable starteamTable = StarTeamFilePointTable.of(currentFilePoint);
+		  final StarTeamFilePointTable historicTable = StarTeamFilePointTable.of(historicFilePoint);
+		  final List<StarTeamChangeLogEntry> removed = new ArrayList<StarTeamChangeLogEntry>();
+		  // changed and rolled back files in path order, then added files
+		  final List<File> changed = new ArrayList<File>();
+		  final List<String> changeTypes = new ArrayList<String>();
+		  final List<File> added = new ArrayList<File>();
 	
-		  final Set<java.io.File> higher = new HashSet<java.io.File>(); // newer revision
-		  final Set<java.io.File> lower = new HashSet<java.io.File>(); // typically rollback of a revision
-		  StarTeamChangeLogEntry change;
+		  StarTeamFilePointDiff.diff(starteamTable, historicTable, new StarTeamFilePointDiff.Listener() {
+			  public void added(int current) {
+				  added.add(file(current));
+			  }
 	
-		  for (java.io.File f : common) {
-			  StarTeamFilePoint starteam = starteamFilePointMap.get(f);
-			  StarTeamFilePoint historic = historicFilePointMap.get(f);
+			  public void removed(int historic) {
+				  StarTeamChangeLogEntry entry = new StarTeamChangeLogEntry(historicTable.getName(historic), historicTable.getRevision(historic), new Date(), "", "", "removed");
+				  entry.setPath(relativePath(historicTable.getPath(historic), entry.getFileName()));
+				  removed.add(entry);
+			  }
 	
-			  if (starteam.getRevisionNumber() == historic.getRevisionNumber()) {
-				  //unchanged files
-				  continue;
+			  public void changed(int current, int historic) {
+				  changed.add(file(current));
+				  changeTypes.add("change");
 			  }
-			  com.starbase.starteam.File stf = starteamFileMap.get(f);
-			  if (starteam.getRevisionNumber() > historic.getRevisionNumber()) {
-				  higher.add(f);
-				  changeSet.addChange(FileToStarTeamChangeLogEntry(stf,"change"));
+	
+			  public void rolledBack(int current, int historic) {
+				  changed.add(file(current));
+				  changeTypes.add("rollback");
 			  }
-			  if (starteam.getRevisionNumber() < historic.getRevisionNumber()) {
-				  lower.add(f);
-				  changeSet.addChange(FileToStarTeamChangeLogEntry(stf,"rollback"));
+	
+			  private File file(int current) {
+				  return starteamFileMap.get(new java.io.File(starteamTable.getPath(current)));
 			  }
-		  }
+		  });
+
+		  List<File> described = new ArrayList<File>(changed);
+		  described.addAll(added);
+		  populateChangeLogProperties(described);
 	
-		  for (java.io.File f : historicOnly) {
-			  StarTeamFilePoint historic = historicFilePointMap.get(f);
-			  change = new StarTeamChangeLogEntry(f.getName(), historic.getRevisionNumber(), new Date(), "", "", "removed");
+		  for (int i = 0; i < changed.size(); i++) {
+			  changeSet.addChange(FileToStarTeamChangeLogEntry(changed.get(i), changeTypes.get(i)));
+		  }
+		  for (StarTeamChangeLogEntry change : removed) {
 			  changeSet.addChange(change);
 		  }
-		  for (java.io.File f : starteamOnly) {
-			  com.starbase.starteam.File stf = starteamFileMap.get(f);
-			  changeSet.addChange(FileToStarTeamChangeLogEntry(stf,"added"));
+		  for (File file : added) {
+			  changeSet.addChange(FileToStarTeamChangeLogEntry(file, "added"));
 		  }
 	
 		  return changeSet;
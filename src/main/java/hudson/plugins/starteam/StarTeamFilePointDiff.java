@@ -0,0 +1,72 @@
+package hudson.plugins.starteam;
+
+/**
+ * Compares the file points of the current view with those of the last build.
+ * Both tables are sorted the same way, so they are walked side by side in one
+ * pass, without building maps or sets of paths.
+ */
+final class StarTeamFilePointDiff {
+
+	/**
+	 * Receives the differences, in path order. Indexes refer to the current
+	 * and the historic table.
+	 */
+	interface Listener {
+		void added(int current);
+
+		void removed(int historic);
+
+		void changed(int current, int historic);
+
+		/** typically rollback of a revision */
+		void rolledBack(int current, int historic);
+	}
+
+	private StarTeamFilePointDiff() {
+	}
+
+	static void diff(StarTeamFilePointTable current, StarTeamFilePointTable historic, Listener listener) {
+		int i = 0;
+		int j = 0;
+		int currentDir = 0;
+		int historicDir = 0;
+		int dirComparison = 0;
+		boolean dirsCompared = false;
+		while (i < current.size() && j < historic.size()) {
+			while (current.dirEnd(currentDir) <= i) {
+				currentDir++;
+				dirsCompared = false;
+			}
+			while (historic.dirEnd(historicDir) <= j) {
+				historicDir++;
+				dirsCompared = false;
+			}
+			if (!dirsCompared) {
+				dirComparison = StarTeamFilePointTable.comparePaths(current.getDir(currentDir), historic.getDir(historicDir));
+				dirsCompared = true;
+			}
+			int cmp = dirComparison != 0 ? dirComparison : current.compareName(i, historic, j);
+			if (cmp < 0) {
+				listener.added(i++);
+			} else if (cmp > 0) {
+				listener.removed(j++);
+			} else {
+				int revision = current.getRevision(i);
+				int historicRevision = historic.getRevision(j);
+				if (revision > historicRevision) {
+					listener.changed(i, j);
+				} else if (revision < historicRevision) {
+					listener.rolledBack(i, j);
+				}
+				i++;
+				j++;
+			}
+		}
+		while (i < current.size()) {
+			listener.added(i++);
+		}
+		while (j < historic.size()) {
+			listener.removed(j++);
+		}
+	}
+}
@@ -1,18 +1,21 @@
 package hudson.plugins.starteam;
 
-import hudson.FilePath;
-
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Functions operating on StarTeamFilePoint type.
@@ -40,11 +43,11 @@ public static Collection<java.io.File> convertToFileCollection(final Collection<
  * @return collection of FilePoints - information vector needed keeping track of file status 
  */
   public static Collection<StarTeamFilePoint> convertFilePointCollection(final Collection<com.starbase.starteam.File> collection) throws IOException {
-    Collection<StarTeamFilePoint> result = new ArrayList<StarTeamFilePoint>();
+    StarTeamFilePointTable.Builder result = new StarTeamFilePointTable.Builder();
     for (com.starbase.starteam.File f:collection) {
-      result.add(new StarTeamFilePoint(f));
+      result.add(f.getFullName(), f.getRevisionNumber());
     }
-    return result;
+    return result.build();
   }
 
   public static Collection<StarTeamFilePoint> extractFilePointSubCollection(final Map<java.io.File, StarTeamFilePoint> map, final Collection<java.io.File> collection) {
@@ -71,67 +74,189 @@ public static Collection<java.io.File> convertToFileCollection(final Collection<
     return result;
   }
 
-  /** Recursive file system discovery
+  /** Recursive file system discovery, see {@link StarTeamWorkspaceScanner}
    * 
    * @param workspace a Hudson workspace directory
-   * @return collection of files within workspace
+   * @return collection of files within workspace, in no particular order
    */
   public static Collection<java.io.File> listAllFiles(final java.io.File workspace) {
-    Collection<java.io.File> result = new ArrayList<java.io.File>();
-    listAllFiles(result,workspace.getAbsoluteFile());
-    return result;
+    return StarTeamWorkspaceScanner.listAllFiles(workspace.getAbsoluteFile(), StarTeamWorkspaceScanner.THREADS);
   }
 
-  private static void listAllFiles(final Collection<java.io.File> result, final java.io.File dir) {
-    List<java.io.File> sub = new ArrayList<java.io.File>();
-    java.io.File[] files = dir.listFiles();
-    if (files != null) {
-    	for (java.io.File f:files) {
-    		if (f.isFile()) {
-    			result.add(f);
-    		} else
-    			if (f.isDirectory()) {
-    				sub.add(f);
-    			}
-    	}
-    	for (java.io.File f:sub) {
-    		listAllFiles(result,f);
-    	}
-    } else {
-		if (dir.isFile()) {
-			result.add(dir);
-		}
-    }
+  /**
+   * Lists the files a previous checkout wrote that are no longer in the view,
+   * without looking at the rest of the workspace.
+   *
+   * @param workspace the workspace the files were checked out to
+   * @param current file points of the view
+   * @param historic file points of the previous checkout
+   * @return files of the historic file points that are not in the current
+   *         ones, only those in the workspace.
+   */
+  public static Collection<java.io.File> listOrphans(final java.io.File workspace, final Collection<StarTeamFilePoint> current, final Collection<StarTeamFilePoint> historic) {
+    final Collection<java.io.File> result = new ArrayList<java.io.File>();
+    final StarTeamFilePointTable historicTable = StarTeamFilePointTable.of(historic);
+    final String root = workspace.getAbsolutePath() + java.io.File.separator;
+    StarTeamFilePointDiff.diff(StarTeamFilePointTable.of(current), historicTable, new StarTeamFilePointDiff.Listener() {
+      public void removed(int h) {
+        String path = historicTable.getPath(h);
+        // file points of a workspace somewhere else must not delete anything here,
+        // the workspace may have been recorded with another case on Windows
+        if (StarTeamFilePointTable.startsWithPath(path, root)) {
+          result.add(new java.io.File(path));
+        }
+      }
+
+      public void added(int c) {
+      }
+
+      public void changed(int c, int h) {
+      }
+
+      public void rolledBack(int c, int h) {
+      }
+    });
+    return result;
   }
 
   // storage
 
-  @SuppressWarnings("unchecked")
+  /**
+   * First bytes of a binary file point file, after decompression: "STFP".
+   */
+  static final int MAGIC = 0x53544650;
+
+  /**
+   * Version of the binary format written by {@link #storeCollection}.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * Loads the file points stored in a build directory, in the binary format
+   * or in the CSV format of older builds.
+   *
+   * @param buildDir the root directory of a build
+   * @return the file points, or null if the build didn't store any.
+   */
+  public static Collection<StarTeamFilePoint> loadFilePoints(final java.io.File buildDir) throws IOException {
+    java.io.File file = new java.io.File(buildDir, StarTeamConnection.FILE_POINT_FILENAME);
+    if (!file.exists()) {
+      file = new java.io.File(buildDir, StarTeamConnection.LEGACY_FILE_POINT_FILENAME);
+      if (!file.exists()) {
+        return null;
+      }
+    }
+    return loadCollection(file);
+  }
+
+  /**
+   * Reads a file point file, in either format. The file is streamed and
+   * never written to.
+   *
+   * @param file a file point file
+   * @return the file points stored in the file, as a compact table
+   */
   public static Collection<StarTeamFilePoint> loadCollection(final java.io.File file) throws IOException {
-    Collection<String> stringCollection = FileUtils.readLines(file,"ISO-8859-1");
-    Collection<StarTeamFilePoint> result = new ArrayList<StarTeamFilePoint>();
-    for (String str:stringCollection) {
+    InputStream is = new FileInputStream(file);
+    try {
+      return loadCollection(is);
+    } finally {
+      is.close();
+    }
+  }
+
+  /**
+   * Reads file points in either format from a stream.
+   *
+   * @param stream the content of a file point file, not closed by this method
+   * @return the file points, as a compact table
+   */
+  public static Collection<StarTeamFilePoint> loadCollection(final InputStream stream) throws IOException {
+    InputStream is = new BufferedInputStream(stream);
+    is.mark(2);
+    int b1 = is.read();
+    int b2 = is.read();
+    is.reset();
+    if (b1 == (GZIPInputStream.GZIP_MAGIC & 0xff) && b2 == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+      return loadBinary(is);
+    }
+    return loadCsv(is);
+  }
+
+  private static Collection<StarTeamFilePoint> loadBinary(final InputStream is) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(is)));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a file point file");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported file point file version " + version);
+    }
+    int count = in.readInt();
+    StarTeamFilePointTable.Builder result = new StarTeamFilePointTable.Builder();
+    String previous = "";
+    for (int i = 0; i < count; i++) {
+      int revision = in.readInt();
+      // each path is stored as the length of the prefix it shares with the previous one, and the rest
+      int shared = in.readUnsignedShort();
+      String path = previous.substring(0, shared) + in.readUTF();
+      result.add(path, revision);
+      previous = path;
+    }
+    return result.build();
+  }
+
+  private static Collection<StarTeamFilePoint> loadCsv(final InputStream is) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(is, "ISO-8859-1"));
+    StarTeamFilePointTable.Builder result = new StarTeamFilePointTable.Builder();
+    String str;
+    while ((str = reader.readLine()) != null) {
+      if (str.length() == 0) {
+        continue;
+      }
 
       int pos = str.indexOf(',');
 
       String revision = str.substring(0,pos);
       String path = str.substring(pos+1);
 
-      StarTeamFilePoint f = new StarTeamFilePoint(path,Integer.parseInt(revision));
-
-      result.add(f);
+      result.add(path,Integer.parseInt(revision));
     }
-    FileUtils.writeLines(file,"ISO-8859-1",stringCollection);
-
-    return result;
+    return result.build();
   }
 
+  /**
+   * Writes file points in the compressed binary format.
+   *
+   * @param bos the stream to write to, not closed by this method
+   * @param collection the file points to write
+   */
   public static void storeCollection(final OutputStream bos, final Collection<StarTeamFilePoint> collection) throws IOException {
-    Collection<String> stringCollection = new ArrayList<String>();
-	for (StarTeamFilePoint i:collection) {
-      stringCollection.add(i.getRevisionNumber()+","+i.getFullfilepath());
-	}
-	IOUtils.writeLines(stringCollection, null, bos, "ISO-8859-1");
+    GZIPOutputStream gzip = new GZIPOutputStream(bos);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(collection.size());
+    String previous = "";
+    for (StarTeamFilePoint i:collection) {
+      String path = i.getFullfilepath();
+      int shared = Math.min(sharedPrefixLength(previous, path), 0xffff);
+      out.writeInt(i.getRevisionNumber());
+      out.writeShort(shared);
+      out.writeUTF(path.substring(shared));
+      previous = path;
+    }
+    out.flush();
+    gzip.finish();
+  }
+
+  private static int sharedPrefixLength(final String a, final String b) {
+    int max = Math.min(a.length(), b.length());
+    int i = 0;
+    while (i < max && a.charAt(i) == b.charAt(i)) {
+      i++;
+    }
+    return i;
   }
 
 }
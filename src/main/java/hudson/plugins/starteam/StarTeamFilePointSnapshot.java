@@ -0,0 +1,176 @@
+package hudson.plugins.starteam;
+
+import hudson.FilePath;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reference to the file points stored by a build, sent to the node that polls
+ * or checks out instead of the file points themselves.
+ * <p>
+ * Every node keeps the last file points used in each workspace, together with
+ * the digest of the file they were stored in. If the digest still matches,
+ * the file points are taken from there. Otherwise the stored file is read
+ * from the master through a {@link FilePath}, which transfers the compressed
+ * file rather than serialized objects.
+ * </p>
+ * <p>
+ * The number of workspaces remembered by a node is taken from the system
+ * property <tt>hudson.plugins.starteam.StarTeamFilePointSnapshot.maxEntries</tt>
+ * and defaults to 32.
+ * </p>
+ */
+final class StarTeamFilePointSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int MAX_ENTRIES = Integer.getInteger(StarTeamFilePointSnapshot.class.getName() + ".maxEntries", 32);
+
+	/** last file points per workspace path, least recently used first. */
+	private static final Map<String, Cached> CACHE = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private final FilePath file;
+	private final String digest;
+
+	private StarTeamFilePointSnapshot(FilePath file, String digest) {
+		this.file = file;
+		this.digest = digest;
+	}
+
+	/**
+	 * Runs on the master.
+	 *
+	 * @param buildDir the root directory of a build
+	 * @return a reference to the file points of the build, or null if the
+	 *         build didn't store any.
+	 */
+	static StarTeamFilePointSnapshot of(java.io.File buildDir) throws IOException {
+		return of(buildDir, StarTeamConnection.FILE_POINT_FILENAME);
+	}
+
+	/**
+	 * Runs on the master.
+	 *
+	 * @param buildDir the root directory of a build
+	 * @param fileName the name of the file the file points were stored in,
+	 *        see {@link StarTeamFolderMapping#getFilePointFileName()}
+	 * @return a reference to the file points of the build, or null if the
+	 *         build didn't store any.
+	 */
+	static StarTeamFilePointSnapshot of(java.io.File buildDir, String fileName) throws IOException {
+		java.io.File f = new java.io.File(buildDir, fileName);
+		if (!f.exists()) {
+			if (!StarTeamConnection.FILE_POINT_FILENAME.equals(fileName)) {
+				return null;
+			}
+			f = new java.io.File(buildDir, StarTeamConnection.LEGACY_FILE_POINT_FILENAME);
+			if (!f.exists()) {
+				return null;
+			}
+		}
+		MessageDigest md = newDigest();
+		InputStream is = new BufferedInputStream(new FileInputStream(f));
+		try {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = is.read(buffer)) != -1) {
+				md.update(buffer, 0, n);
+			}
+		} finally {
+			is.close();
+		}
+		return new StarTeamFilePointSnapshot(new FilePath(f), toHex(md.digest()));
+	}
+
+	String getDigest() {
+		return digest;
+	}
+
+	/**
+	 * Runs on the node that polls or checks out.
+	 *
+	 * @param workspace the workspace the file points belong to
+	 * @return the file points
+	 */
+	Collection<StarTeamFilePoint> load(java.io.File workspace) throws IOException, InterruptedException {
+		Collection<StarTeamFilePoint> result = get(workspace, digest);
+		if (result == null) {
+			InputStream is = file.read();
+			try {
+				result = StarTeamFilePointFunctions.loadCollection(is);
+			} finally {
+				is.close();
+			}
+			put(workspace, digest, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Remembers the file points a checkout stored.
+	 *
+	 * @param workspace the workspace the file points belong to
+	 * @param digest digest of the stored file
+	 * @param filePoints the file points
+	 */
+	static void put(java.io.File workspace, String digest, Collection<StarTeamFilePoint> filePoints) {
+		synchronized (CACHE) {
+			CACHE.put(workspace.getAbsolutePath(), new Cached(digest, StarTeamFilePointTable.of(filePoints)));
+		}
+	}
+
+	static Collection<StarTeamFilePoint> get(java.io.File workspace, String digest) {
+		synchronized (CACHE) {
+			Cached cached = CACHE.get(workspace.getAbsolutePath());
+			return cached != null && cached.digest.equals(digest) ? cached.filePoints : null;
+		}
+	}
+
+	static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	private static final class Cached {
+		final String digest;
+		final StarTeamFilePointTable filePoints;
+
+		Cached(String digest, StarTeamFilePointTable filePoints) {
+			this.digest = digest;
+			this.filePoints = filePoints;
+		}
+	}
+}
@@ -0,0 +1,349 @@
+package hudson.plugins.starteam;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only collection of file points that takes tens of bytes per file
+ * instead of the hundreds taken by {@link StarTeamFilePoint} objects.
+ * <p>
+ * Every directory is stored once. File names are packed into one character
+ * array and revisions into an int array. Entries are sorted by directory,
+ * then by name, so a path is found by two binary searches. Iterating creates
+ * the {@link StarTeamFilePoint}s on the fly. If a path is added twice, the
+ * last revision wins.
+ * </p>
+ * <p>
+ * Paths are compared the way {@link java.io.File} compares them on this
+ * platform: ignoring case, and with '/' and '\' alike, on Windows.
+ * </p>
+ */
+final class StarTeamFilePointTable extends AbstractCollection<StarTeamFilePoint> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final boolean IGNORE_CASE = new java.io.File("a").equals(new java.io.File("A"));
+
+	/** orders paths by {@link #comparePaths(String, String)}. */
+	static final Comparator<String> PATH_ORDER = new Comparator<String>() {
+		public int compare(String a, String b) {
+			return comparePaths(a, b);
+		}
+	};
+
+	/** directories, with the trailing separator, sorted. */
+	private final String[] dirs;
+	/** index of the first entry of every directory, plus the number of entries. */
+	private final int[] dirStart;
+	/** file names of all entries, one after the other. */
+	private final char[] nameChars;
+	/** offset of every name in {@link #nameChars}, plus the total length. */
+	private final int[] nameStart;
+	private final int[] revisions;
+
+	private StarTeamFilePointTable(String[] dirs, int[] dirStart, char[] nameChars, int[] nameStart, int[] revisions) {
+		this.dirs = dirs;
+		this.dirStart = dirStart;
+		this.nameChars = nameChars;
+		this.nameStart = nameStart;
+		this.revisions = revisions;
+	}
+
+	/**
+	 * @param filePoints file points, may be null
+	 * @return the file points as a table, the collection itself if it is one.
+	 */
+	static StarTeamFilePointTable of(Collection<StarTeamFilePoint> filePoints) {
+		if (filePoints instanceof StarTeamFilePointTable) {
+			return (StarTeamFilePointTable) filePoints;
+		}
+		Builder builder = new Builder();
+		if (filePoints != null) {
+			for (StarTeamFilePoint fp : filePoints) {
+				builder.add(fp.getFullfilepath(), fp.getRevisionNumber());
+			}
+		}
+		return builder.build();
+	}
+
+	@Override
+	public int size() {
+		return revisions.length;
+	}
+
+	/**
+	 * @param path a full file path
+	 * @return the index of the path, or -1 if it is not in the table.
+	 */
+	int indexOf(String path) {
+		int split = nameOffset(path);
+		int dir = Arrays.binarySearch(dirs, path.substring(0, split), PATH_ORDER);
+		if (dir < 0) {
+			return -1;
+		}
+		int low = dirStart[dir];
+		int high = dirStart[dir + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareName(mid, path, split);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	String getPath(int index) {
+		return dirs[dirIndex(index)] + getName(index);
+	}
+
+	String getName(int index) {
+		return new String(nameChars, nameStart[index], nameStart[index + 1] - nameStart[index]);
+	}
+
+	int getRevision(int index) {
+		return revisions[index];
+	}
+
+	/**
+	 * @param dir a directory index, from 0
+	 * @return the directory, with the trailing separator
+	 */
+	String getDir(int dir) {
+		return dirs[dir];
+	}
+
+	/**
+	 * @param dir a directory index, from 0
+	 * @return the index after the last entry of the directory
+	 */
+	int dirEnd(int dir) {
+		return dirStart[dir + 1];
+	}
+
+	/**
+	 * Compares the name of an entry with the name of an entry of another
+	 * table, in the order of {@link #comparePaths(String, String)}.
+	 */
+	int compareName(int index, StarTeamFilePointTable other, int otherIndex) {
+		int start = nameStart[index];
+		int length = nameStart[index + 1] - start;
+		int otherStart = other.nameStart[otherIndex];
+		int otherLength = other.nameStart[otherIndex + 1] - otherStart;
+		int n = Math.min(length, otherLength);
+		for (int i = 0; i < n; i++) {
+			int cmp = compareChars(nameChars[start + i], other.nameChars[otherStart + i]);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return length - otherLength;
+	}
+
+	@Override
+	public Iterator<StarTeamFilePoint> iterator() {
+		return new Iterator<StarTeamFilePoint>() {
+			private int next;
+
+			public boolean hasNext() {
+				return next < revisions.length;
+			}
+
+			public StarTeamFilePoint next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				StarTeamFilePoint result = new StarTeamFilePoint(getPath(next), revisions[next]);
+				next++;
+				return result;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private int dirIndex(int index) {
+		// every directory has at least one entry, so the starts are distinct
+		int dir = Arrays.binarySearch(dirStart, 0, dirs.length, index);
+		return dir >= 0 ? dir : -dir - 2;
+	}
+
+	/**
+	 * Compares the name of an entry with the part of the path after split.
+	 */
+	private int compareName(int index, String path, int split) {
+		int start = nameStart[index];
+		int length = nameStart[index + 1] - start;
+		int otherLength = path.length() - split;
+		int n = Math.min(length, otherLength);
+		for (int i = 0; i < n; i++) {
+			int cmp = compareChars(nameChars[start + i], path.charAt(split + i));
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return length - otherLength;
+	}
+
+	/**
+	 * Compares two paths like {@link java.io.File#compareTo(java.io.File)}
+	 * does on this platform.
+	 */
+	static int comparePaths(String a, String b) {
+		int n = Math.min(a.length(), b.length());
+		for (int i = 0; i < n; i++) {
+			int cmp = compareChars(a.charAt(i), b.charAt(i));
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return a.length() - b.length();
+	}
+
+	/**
+	 * @return true if the path starts with the prefix, the characters compared
+	 *         like {@link #comparePaths(String, String)} does.
+	 */
+	static boolean startsWithPath(String path, String prefix) {
+		if (path.length() < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (compareChars(path.charAt(i), prefix.charAt(i)) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int compareChars(char a, char b) {
+		return fold(a) - fold(b);
+	}
+
+	private static char fold(char c) {
+		if (java.io.File.separatorChar == '\\' && c == '/') {
+			return '\\';
+		}
+		// as String#compareToIgnoreCase does
+		return IGNORE_CASE ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+	}
+
+	/**
+	 * @return the path with the characters folded, equal for paths that
+	 *         compare equal.
+	 */
+	private static String fold(String path) {
+		char[] chars = path.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = fold(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return the index of the file name in the path, after the last separator.
+	 */
+	private static int nameOffset(String path) {
+		return Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1;
+	}
+
+	/**
+	 * Collects file points for a table.
+	 */
+	static final class Builder {
+		/** folded directory -> the directory as first added. */
+		private final Map<String, String> internedDirs = new HashMap<String, String>();
+		private final List<String> entryDirs = new ArrayList<String>();
+		private final List<String> entryNames = new ArrayList<String>();
+		private int[] entryRevisions = new int[16];
+
+		Builder add(String path, int revision) {
+			int split = nameOffset(path);
+			String dir = path.substring(0, split);
+			String key = fold(dir);
+			String interned = internedDirs.get(key);
+			if (interned == null) {
+				internedDirs.put(key, dir);
+				interned = dir;
+			}
+			if (entryRevisions.length == entryDirs.size()) {
+				entryRevisions = Arrays.copyOf(entryRevisions, entryRevisions.length * 2);
+			}
+			entryRevisions[entryDirs.size()] = revision;
+			entryDirs.add(interned);
+			entryNames.add(path.substring(split));
+			return this;
+		}
+
+		StarTeamFilePointTable build() {
+			Integer[] order = new Integer[entryDirs.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = Integer.valueOf(i);
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					int cmp = comparePaths(entryDirs.get(a.intValue()), entryDirs.get(b.intValue()));
+					if (cmp == 0) {
+						cmp = comparePaths(entryNames.get(a.intValue()), entryNames.get(b.intValue()));
+					}
+					// the sort is stable, so the last of equal paths comes last
+					return cmp;
+				}
+			});
+
+			List<Integer> unique = new ArrayList<Integer>(order.length);
+			int nameLength = 0;
+			for (int i = 0; i < order.length; i++) {
+				int e = order[i].intValue();
+				if (i + 1 < order.length) {
+					int n = order[i + 1].intValue();
+					if (entryDirs.get(e) == entryDirs.get(n) && comparePaths(entryNames.get(e), entryNames.get(n)) == 0) {
+						continue;
+					}
+				}
+				unique.add(order[i]);
+				nameLength += entryNames.get(e).length();
+			}
+
+			String[] dirs = new String[internedDirs.size()];
+			int[] dirStart = new int[dirs.length + 1];
+			char[] nameChars = new char[nameLength];
+			int[] nameStart = new int[unique.size() + 1];
+			int[] revisions = new int[unique.size()];
+			int dirCount = 0;
+			int offset = 0;
+			for (int i = 0; i < unique.size(); i++) {
+				int e = unique.get(i).intValue();
+				String dir = entryDirs.get(e);
+				if (dirCount == 0 || dirs[dirCount - 1] != dir) {
+					dirs[dirCount] = dir;
+					dirStart[dirCount] = i;
+					dirCount++;
+				}
+				String name = entryNames.get(e);
+				name.getChars(0, name.length(), nameChars, offset);
+				nameStart[i] = offset;
+				offset += name.length();
+				revisions[i] = entryRevisions[e];
+			}
+			dirStart[dirCount] = unique.size();
+			nameStart[unique.size()] = offset;
+			return new StarTeamFilePointTable(dirs, dirStart, nameChars, nameStart, revisions);
+		}
+	}
+}
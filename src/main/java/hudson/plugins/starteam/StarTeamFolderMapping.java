@@ -0,0 +1,200 @@
+package hudson.plugins.starteam;
+
+import java.io.File;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * A StarTeam folder and the directory of the workspace it is checked out to.
+ * <p>
+ * A job checks out either its single folder into the workspace, or every
+ * folder of its folder mappings into its own directory. Each mapping keeps
+ * its own file points and high-water mark in the build directory. The files
+ * of the single folder keep their old names, so builds made before mappings
+ * existed are still compared with.
+ * </p>
+ * <p>
+ * Mappings are checked out at the same time, and each removes the files of
+ * its directory that it doesn't know. Their directories must therefore lie
+ * inside the workspace and must not overlap: a mapping to the workspace
+ * itself is only allowed on its own. A folder can be mapped only once.
+ * </p>
+ */
+final class StarTeamFolderMapping implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String folderName;
+	private final String path;
+
+	/** distinguishes the files of the mapping, null for a single folder. */
+	private final String id;
+
+	private StarTeamFolderMapping(String folderName, String path, String id) {
+		this.folderName = folderName;
+		this.path = path;
+		this.id = id;
+	}
+
+	/**
+	 * @param folderName
+	 *            the folder of a job without mappings
+	 * @return the mapping of the folder to the whole workspace
+	 */
+	static StarTeamFolderMapping single(String folderName) {
+		return new StarTeamFolderMapping(folderName, ".", null);
+	}
+
+	/**
+	 * @param folderName
+	 *            a StarTeam folder
+	 * @param path
+	 *            a directory relative to the workspace
+	 * @return the mapping of the folder to the directory. Its files are named
+	 *         after the {@link #normalize(String) normalized} path, so
+	 *         spellings of the same directory keep the same files.
+	 * @throws IllegalArgumentException
+	 *             if the path is absolute or contains ".."
+	 */
+	static StarTeamFolderMapping of(String folderName, String path) {
+		String dir = normalize(path);
+		byte[] digest;
+		try {
+			MessageDigest md = StarTeamFilePointSnapshot.newDigest();
+			// "." as the workspace itself was written before paths were normalized
+			digest = md.digest((folderName + "," + (dir.length() == 0 ? "." : dir)).getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not available", e);
+		}
+		byte[] id = new byte[4];
+		System.arraycopy(digest, 0, id, 0, id.length);
+		return new StarTeamFolderMapping(folderName, path, StarTeamFilePointSnapshot.toHex(id));
+	}
+
+	/**
+	 * @param foldername
+	 *            the folder of the job
+	 * @param foldermappings
+	 *            lines of <tt>folder,path</tt>, see
+	 *            {@link StarTeamFunctions#splitCsvLines(String)}, may be null
+	 * @return the mappings in the order given, or the single folder if there
+	 *         are none
+	 * @throws IllegalArgumentException
+	 *             if a path is absolute or leaves the workspace, if the paths
+	 *             of two mappings overlap or if a folder is mapped twice
+	 */
+	static List<StarTeamFolderMapping> parse(String foldername, String foldermappings) {
+		List<String[]> folderLines = StarTeamFunctions.splitCsvLines(foldermappings);
+		if (folderLines.isEmpty()) {
+			return Collections.singletonList(single(foldername));
+		}
+		List<StarTeamFolderMapping> result = new ArrayList<StarTeamFolderMapping>();
+		List<String> dirs = new ArrayList<String>();
+		// folders as StarTeamFunctions.findFolderInView looks them up
+		Map<String, String> folders = new HashMap<String, String>();
+		for (String[] line : folderLines) {
+			String folder = StringUtils.join(StarTeamFunctions.pathSegments(line[0]), "/").toLowerCase();
+			if (folders.containsKey(folder)) {
+				throw new IllegalArgumentException("Folder " + line[0] + " is mapped twice, as " + folders.get(folder)
+						+ " and " + line[1]);
+			}
+			folders.put(folder, line[1]);
+			String dir = normalize(line[1]);
+			for (int i = 0; i < dirs.size(); i++) {
+				if (overlaps(dirs.get(i), dir)) {
+					throw new IllegalArgumentException("The workspace paths of folders " + result.get(i).getFolderName()
+							+ " and " + line[0] + " overlap");
+				}
+			}
+			dirs.add(dir);
+			result.add(of(line[0], line[1]));
+		}
+		return result;
+	}
+
+	/**
+	 * @param path
+	 *            a workspace path of a mapping
+	 * @return the path with '/' as separator and without "." segments, the
+	 *         empty string for the workspace itself
+	 * @throws IllegalArgumentException
+	 *             if the path is absolute or contains ".."
+	 */
+	static String normalize(String path) {
+		String p = path.replace('\\', '/');
+		if (p.startsWith("/") || (p.length() > 1 && p.charAt(1) == ':')) {
+			throw new IllegalArgumentException("Workspace path " + path + " must be relative to the workspace");
+		}
+		StringBuilder result = new StringBuilder();
+		for (String segment : StarTeamFunctions.pathSegments(p)) {
+			if (segment.equals("..")) {
+				throw new IllegalArgumentException("Workspace path " + path + " must not contain ..");
+			}
+			if (!segment.equals(".")) {
+				if (result.length() > 0) {
+					result.append('/');
+				}
+				result.append(segment);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @return true if one of the normalized paths is the other or lies
+	 *         within it. Case is ignored, as it is on some file systems.
+	 */
+	private static boolean overlaps(String a, String b) {
+		String x = a.toLowerCase() + "/";
+		String y = b.toLowerCase() + "/";
+		return a.length() == 0 || b.length() == 0 || x.startsWith(y) || y.startsWith(x);
+	}
+
+	String getFolderName() {
+		return folderName;
+	}
+
+	/**
+	 * @return the directory relative to the workspace, "." for the workspace
+	 *         itself
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * @param workspace
+	 *            the workspace of the job
+	 * @return the directory the folder is checked out to
+	 */
+	File getWorkspace(File workspace) {
+		return ".".equals(path) ? workspace : new File(workspace, path);
+	}
+
+	/**
+	 * @return the name of the file the file points are stored in
+	 */
+	String getFilePointFileName() {
+		return id == null ? StarTeamConnection.FILE_POINT_FILENAME : "starteam-filepoints-" + id + ".dat";
+	}
+
+	/**
+	 * @return the name of the file the high-water mark is stored in
+	 */
+	String getHighWaterMarkFileName() {
+		return id == null ? StarTeamConnection.HIGH_WATER_MARK_FILENAME : "starteam-highwatermark-" + id + ".csv";
+	}
+
+	@Override
+	public String toString() {
+		return folderName + " -> " + path;
+	}
+}
@@ -8,15 +8,29 @@ import com.starbase.starteam.Item;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 
 public class StarTeamFunctions {
 
+	/**
+	 * IDs of the folders found by {@link #findFolderInView(View, String)}, by
+	 * server, view and lower case folder path.
+	 */
+	private static final Map<String, Integer> FOLDER_IDS = new ConcurrentHashMap<String, Integer>();
+
 	/**
 	 * Find the given folder in the given view.
+	 * <p>
+	 * The folder is found by walking its path from the root folder, one level
+	 * per segment. Its ID is remembered, so later connections to the same view
+	 * reopen the folder directly and only fall back to the walk if it was
+	 * moved or deleted.
+	 * </p>
 	 *
 	 * @param view
 	 *            The view to look in.
@@ -32,55 +46,106 @@ public class StarTeamFunctions {
 			return view.getRootFolder();
 		}
 
-		// Create a File object with the folder name for system-
-		// independent matching
-		java.io.File thefolder = new java.io.File(foldername.toLowerCase());
-
-		// Search for the folder in subfolders
-		Folder result = findFolderInView(view.getRootFolder(), thefolder);
+		String[] segments = pathSegments(foldername);
+		String key = view.getServer().getAddress() + ":" + view.getServer().getPort() + ":" + view.getID() + ":"
+				+ StringUtils.join(segments, "/").toLowerCase();
+		Folder result = findFolderById(view, FOLDER_IDS.get(key), segments);
+		if (result == null) {
+			result = findFolderByPath(view.getRootFolder(), segments);
+		}
 		if (result == null) {
+			FOLDER_IDS.remove(key);
 			throw new StarTeamSCMException("Couldn't find folder " + foldername
 					+ " in view " + view.getName());
 		}
+		FOLDER_IDS.put(key, Integer.valueOf(result.getID()));
 		return result;
 	}
 
 	/**
-	 * Do a breadth-first search for a folder with the given name, starting with
-	 * children of the provided folder.
+	 * @param path
+	 *            a folder path with either kind of separator
+	 * @return the names in the path, without empty ones
+	 */
+	static String[] pathSegments(String path) {
+		return StringUtils.split(path, "/\\");
+	}
+
+	/**
+	 * Reopens a folder found before.
 	 *
-	 * @param folder
-	 *            the folder whose children to check
-	 * @param thefolder
-	 *            the folder to look for
-	 * @return
+	 * @param view
+	 *            the view to look in
+	 * @param id
+	 *            the cached ID of the folder, may be null
+	 * @param segments
+	 *            the names in the path of the folder to look for
+	 * @return the folder, or null if there is no cached ID or the folder with
+	 *         this ID is gone or no longer at the path looked for
 	 */
-	private static Folder findFolderInView(Folder folder, java.io.File thefolder) {
-		// Check subfolders, breadth first. checkLater is a collection
-		// of folders that didn't match, therefore their children
-		// will be checked next.
-		Collection<Folder> checkLater = new ArrayList<Folder>();
-		for (Folder f : folder.getSubFolders()) {
-			// Compare pathnames. The getFolderHierarchy call returns
-			// the full folder name (including root folder name which
-			// is the same as the view name) terminated by the
-			// platform-specific separator.
-			if (f.getFolderHierarchy().equalsIgnoreCase(
-					thefolder.getPath() + java.io.File.separator)) {
+	private static Folder findFolderById(View view, Integer id, String[] segments) {
+		if (id == null) {
+			return null;
+		}
+		try {
+			Folder f = (Folder) view.findItem(view.getServer().getTypeNames().FOLDER, id.intValue());
+			if (f != null && isAtPath(pathSegments(f.getFolderHierarchy()), segments)) {
 				return f;
-			} else {
-				// add to list of folders whose children will be checked
-				checkLater.add(f);
 			}
+		} catch (RuntimeException e) {
+			// deleted or not visible in this configuration of the view
 		}
-		// recurse unto children
-		for (Folder f : checkLater) {
-			Folder result = findFolderInView(f, thefolder);
-			if (result != null) {
-				return result;
+		return null;
+	}
+
+	/**
+	 * @param hierarchy
+	 *            the names in the full path of a folder, starting with the root
+	 *            folder
+	 * @param segments
+	 *            the names in a path, with or without the root folder
+	 * @return true if the path leads to the folder
+	 */
+	static boolean isAtPath(String[] hierarchy, String[] segments) {
+		int offset = hierarchy.length - segments.length;
+		if (offset < 0 || offset > 1) {
+			return false;
+		}
+		for (int i = 0; i < segments.length; i++) {
+			if (!hierarchy[offset + i].equalsIgnoreCase(segments[i])) {
+				return false;
 			}
 		}
-		return null;
+		return true;
+	}
+
+	/**
+	 * Walks a folder path down from the root folder. The first segment may be
+	 * the name of the root folder, which is the same as the view name.
+	 *
+	 * @param root
+	 *            the root folder of the view
+	 * @param segments
+	 *            the names in the path of the folder to look for
+	 * @return the folder or null if a segment has no matching subfolder
+	 */
+	private static Folder findFolderByPath(Folder root, String[] segments) {
+		Folder folder = root;
+		int i = 0;
+		if (segments.length > 1 && segments[0].equalsIgnoreCase(root.getName())) {
+			i = 1;
+		}
+		for (; i < segments.length && folder != null; i++) {
+			Folder next = null;
+			for (Folder f : folder.getSubFolders()) {
+				if (f.getName().equalsIgnoreCase(segments[i])) {
+					next = f;
+					break;
+				}
+			}
+			folder = next;
+		}
+		return folder;
 	}
 
   public static Collection<File> listAllFiles(Map<String,Folder> rootFolderMap, java.io.File workspace) {
@@ -96,6 +161,21 @@ public class StarTeamFunctions {
   public static Collection<File> listAllFiles(Folder rootFolder, java.io.File workspace) {
 		Collection<File> result = new ArrayList<File>();
     // set root folder
+		mapToWorkspace(rootFolder, workspace);
+
+		// Get a list of all files
+		listAllFiles(result, rootFolder);
+
+		return result;
+	}
+
+  /**
+   * Makes the full names of the files in the folder point into the workspace.
+   *
+   * @param rootFolder the folder to map
+   * @param workspace a Hudson workspace directory
+   */
+  public static void mapToWorkspace(Folder rootFolder, java.io.File workspace) {
 		String alternatePath = rootFolder.getAlternatePathFragment();
 		if (alternatePath == null)
 		{
@@ -103,12 +183,18 @@ public class StarTeamFunctions {
 		}
 		java.io.File actualPlace = new java.io.File(workspace,alternatePath);
 		rootFolder.setAlternatePathFragment(actualPlace.getAbsolutePath());
+  }
 
-		// Get a list of all files
-		listAllFiles(result, rootFolder);
-
-		return result;
-	}
+  /**
+   * @param rootFolder the folder to list
+   * @return all files in the folder and its subfolders, without changing
+   *         their working location.
+   */
+  public static Collection<File> listAllFiles(Folder rootFolder) {
+    Collection<File> result = new ArrayList<File>();
+    listAllFiles(result, rootFolder);
+    return result;
+  }
 
   private static void listAllFiles(Collection<File> result, Folder folder) {
     for (Folder f : folder.getSubFolders()) {
@@ -129,8 +215,25 @@ public class StarTeamFunctions {
   }
 
 
+  /**
+   * @param multiplefolder lines of <tt>folder,path</tt>, the path defaults to "."
+   * @return workspace path by StarTeam folder, in the order of the lines
+   */
   public static Map<String,String> splitCsvString(String multiplefolder) {
-    Map<String,String> folderMap = new HashMap<String,String>();
+    Map<String,String> folderMap = new LinkedHashMap<String,String>();
+    for (String[] folderLine:splitCsvLines(multiplefolder)) {
+      folderMap.put(folderLine[0],folderLine[1]);
+    }
+    return folderMap;
+  }
+
+  /**
+   * @param multiplefolder lines of <tt>folder,path</tt>, the path defaults to "."
+   * @return StarTeam folder and workspace path of every line, in the order of
+   *         the lines, also if a folder is given twice
+   */
+  public static List<String[]> splitCsvLines(String multiplefolder) {
+    List<String[]> folderLines = new ArrayList<String[]>();
     if (multiplefolder != null) {
       for (String folderLine:multiplefolder.split("\n")) {
         String folderLineNullable = StringUtils.trimToNull(folderLine);
@@ -142,12 +245,12 @@ public class StarTeamFunctions {
             workspacePath = ".";
           }
           if (starteamFolder != null && workspacePath != null) {
-            folderMap.put(starteamFolder,workspacePath);
+            folderLines.add(new String[] { starteamFolder, workspacePath });
           }
         }
       }
     }
-    return folderMap;
+    return folderLines;
   }
 
 public static Map<java.io.File,com.starbase.starteam.File> convertToFileMap(final Collection<com.starbase.starteam.File> collection) {
@@ -0,0 +1,119 @@
+package hudson.plugins.starteam;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.starbase.starteam.File;
+
+/**
+ * Summary of the files of a view at checkout time, used by incremental
+ * polling: the latest modification time of any file, the number of files and
+ * a digest of the item ID and parent folder of every file.
+ * <p>
+ * A poll that finds a file modified after the mark has changes. If none is
+ * newer, the number of files and the digest tell whether files were added,
+ * deleted or moved. Rollbacks to older revisions are not seen, so the mark
+ * only works for views that follow the tip.
+ * </p>
+ */
+final class StarTeamHighWaterMark implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long modifiedTime;
+	private final int fileCount;
+	/** hex SHA-1 of the sorted item and parent folder IDs of the files. */
+	private final String digest;
+
+	StarTeamHighWaterMark(long modifiedTime, int fileCount, String digest) {
+		this.modifiedTime = modifiedTime;
+		this.fileCount = fileCount;
+		this.digest = digest;
+	}
+
+	/**
+	 * @param files files of a view, with the modification time populated.
+	 * @return the mark of the given files.
+	 */
+	static StarTeamHighWaterMark compute(Collection<File> files) {
+		long modifiedTime = 0;
+		for (File f : files) {
+			modifiedTime = Math.max(modifiedTime, f.getModifiedTime().getLongValue());
+		}
+		return new StarTeamHighWaterMark(modifiedTime, files.size(), digest(files));
+	}
+
+	/**
+	 * @param files files of a view
+	 * @return the digest of the item ID and parent folder ID of the files, in
+	 *         an order that doesn't depend on the order of the files.
+	 */
+	static String digest(Collection<File> files) {
+		long[] ids = new long[files.size()];
+		int i = 0;
+		for (File f : files) {
+			ids[i++] = ((long) f.getItemID() << 32) | (f.getParentFolder().getItemID() & 0xffffffffL);
+		}
+		Arrays.sort(ids);
+		MessageDigest md = StarTeamFilePointSnapshot.newDigest();
+		byte[] bytes = new byte[8];
+		for (long id : ids) {
+			for (int b = 0; b < bytes.length; b++) {
+				bytes[b] = (byte) (id >>> (56 - 8 * b));
+			}
+			md.update(bytes);
+		}
+		return StarTeamFilePointSnapshot.toHex(md.digest());
+	}
+
+	long getModifiedTime() {
+		return modifiedTime;
+	}
+
+	int getFileCount() {
+		return fileCount;
+	}
+
+	String getDigest() {
+		return digest;
+	}
+
+	/**
+	 * @param file a file written by {@link #store(OutputStream)}
+	 * @return the stored mark, or null if the file is missing, unreadable or
+	 *         was written before marks had a digest.
+	 */
+	static StarTeamHighWaterMark load(java.io.File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			String[] fields = FileUtils.readFileToString(file, "ISO-8859-1").trim().split(",");
+			if (fields.length != 3 || fields[2].length() != 40) {
+				return null;
+			}
+			return new StarTeamHighWaterMark(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), fields[2]);
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	void store(OutputStream os) throws IOException {
+		IOUtils.writeLines(Collections.singletonList(modifiedTime + "," + fileCount + "," + digest), null, os, "ISO-8859-1");
+	}
+
+	@Override
+	public String toString() {
+		return "modified time: " + modifiedTime + ", files: " + fileCount;
+	}
+}
@@ -0,0 +1,117 @@
+package hudson.plugins.starteam;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.starbase.starteam.Label;
+import com.starbase.starteam.View;
+
+/**
+ * Translates label names of a view into the IDs used to configure it.
+ * <p>
+ * The labels of a view are read once and kept in the JVM until the directory
+ * expires (see {@link #TTL}), so configuring a view no longer enumerates all
+ * of its labels. A name that is not found reads them again before giving up,
+ * so labels created since are found. Directories are shared by all
+ * connections to the same view of a server.
+ * </p>
+ * <p>
+ * The number of views remembered is taken from the system property
+ * <tt>hudson.plugins.starteam.StarTeamLabelDirectory.maxEntries</tt> and
+ * defaults to 64.
+ * </p>
+ */
+final class StarTeamLabelDirectory {
+
+	/**
+	 * Time in milliseconds loaded labels are trusted before they are read
+	 * again. Defaults to five minutes.
+	 */
+	static final long TTL = Long.getLong(StarTeamLabelDirectory.class.getName() + ".ttl", 5L * 60L * 1000L);
+
+	static final int MAX_ENTRIES = Integer.getInteger(StarTeamLabelDirectory.class.getName() + ".maxEntries", 64);
+
+	/** directories per view, least recently used first. */
+	private static final Map<String, StarTeamLabelDirectory> DIRECTORIES = new LinkedHashMap<String, StarTeamLabelDirectory>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, StarTeamLabelDirectory> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/** label name -> label ID, or null if not read yet. */
+	private Map<String, Integer> labelIds;
+	private long labelsRead;
+
+	private StarTeamLabelDirectory() {
+	}
+
+	/**
+	 * @param view
+	 *            a view of a connected server
+	 * @return the directory of the view
+	 */
+	static StarTeamLabelDirectory get(View view) {
+		return get(view.getServer().getAddress() + ":" + view.getServer().getPort() + ":" + view.getID());
+	}
+
+	/**
+	 * @param key
+	 *            identity of the server and of the view
+	 * @return the directory for the given key, a new one if there is none yet
+	 */
+	static synchronized StarTeamLabelDirectory get(String key) {
+		StarTeamLabelDirectory directory = DIRECTORIES.get(key);
+		if (directory == null) {
+			directory = new StarTeamLabelDirectory();
+			DIRECTORIES.put(key, directory);
+		}
+		return directory;
+	}
+
+	/**
+	 * Drops all cached directories.
+	 */
+	static synchronized void clear() {
+		DIRECTORIES.clear();
+	}
+
+	private static boolean isExpired(long read) {
+		return System.currentTimeMillis() - read > TTL;
+	}
+
+	/**
+	 * @param view
+	 *            the view, used only if the labels are not known yet
+	 * @param labelname
+	 *            the name of a label of the view
+	 * @return the ID of the label
+	 * @throws StarTeamSCMException
+	 *             if the view has no label with this name
+	 */
+	synchronized int findLabel(View view, String labelname) throws StarTeamSCMException {
+		if (labelIds == null || isExpired(labelsRead) || !labelIds.containsKey(labelname)) {
+			readLabels(view);
+		}
+		Integer id = labelIds.get(labelname);
+		if (id == null) {
+			throw new StarTeamSCMException("Couldn't find label [" + labelname + "] in view " + view.getName());
+		}
+		return id.intValue();
+	}
+
+	private void readLabels(View view) {
+		Map<String, Integer> result = new HashMap<String, Integer>();
+		for (Label label : view.getLabels()) {
+			// the first label with a given name wins, as the linear scan did
+			if (!result.containsKey(label.getName())) {
+				result.put(label.getName(), Integer.valueOf(label.getID()));
+			}
+		}
+		labelIds = result;
+		labelsRead = System.currentTimeMillis();
+	}
+}
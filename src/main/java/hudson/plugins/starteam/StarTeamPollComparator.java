@@ -0,0 +1,132 @@
+package hudson.plugins.starteam;
+
+import java.io.PrintStream;
+import java.util.Collection;
+
+import com.starbase.starteam.File;
+import com.starbase.starteam.Folder;
+import com.starbase.starteam.Item;
+
+/**
+ * Answers the only question a poll asks: does the folder differ from the file
+ * points of the last build? The folder tree is walked and the walk stops at
+ * the first difference.
+ * <p>
+ * Unlike {@link StarTeamConnection#computeChangeSet}, nothing is read from
+ * the workspace and no change log entries (and so no user names) are built.
+ * </p>
+ * <p>
+ * When polling on the master, the file points were recorded on a node that
+ * may use other separators. The paths are then compared relative to the
+ * workspace they were recorded in, with '/' as separator.
+ * </p>
+ */
+final class StarTeamPollComparator {
+
+	private final StarTeamFilePointTable historic;
+	/** the recorded workspace with '/' as separator, or null to compare full paths. */
+	private final String root;
+	private final PrintStream logger;
+	private int matched;
+
+	/**
+	 * @param historicFilePoints
+	 *            file points of the last build, may be null
+	 * @param logger
+	 *            the polling log
+	 */
+	StarTeamPollComparator(Collection<StarTeamFilePoint> historicFilePoints, PrintStream logger) {
+		this.historic = StarTeamFilePointTable.of(historicFilePoints);
+		this.root = null;
+		this.logger = logger;
+	}
+
+	/**
+	 * @param historicFilePoints
+	 *            file points of the last build, may be null
+	 * @param workspacePath
+	 *            the workspace the file points were recorded in, as given by
+	 *            the node that recorded them
+	 * @param logger
+	 *            the polling log
+	 */
+	StarTeamPollComparator(Collection<StarTeamFilePoint> historicFilePoints, String workspacePath, PrintStream logger) {
+		this.root = normalize(workspacePath);
+		StarTeamFilePointTable.Builder builder = new StarTeamFilePointTable.Builder();
+		if (historicFilePoints != null) {
+			for (StarTeamFilePoint fp : historicFilePoints) {
+				builder.add(relativize(fp.getFullfilepath()), fp.getRevisionNumber());
+			}
+		}
+		this.historic = builder.build();
+		this.logger = logger;
+	}
+
+	/**
+	 * @return the path with '/' as separator and without a trailing one
+	 */
+	static String normalize(String path) {
+		String result = path.replace('\\', '/');
+		while (result.length() > 1 && result.endsWith("/")) {
+			result = result.substring(0, result.length() - 1);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the path relative to the root if comparing relative paths, the
+	 *         path itself otherwise
+	 */
+	private String relativize(String path) {
+		if (root == null) {
+			return path;
+		}
+		String result = normalize(path);
+		if (result.length() > root.length() && result.startsWith(root) && result.charAt(root.length()) == '/') {
+			return result.substring(root.length() + 1);
+		}
+		return result;
+	}
+
+	/**
+	 * @param rootFolder
+	 *            the folder to compare, mapped to the workspace the file
+	 *            points were recorded in
+	 * @return true if a file was added, removed or changed its revision. If
+	 *         there are no historic file points, true if there is any file.
+	 */
+	boolean hasChanges(Folder rootFolder) {
+		matched = 0;
+		if (differs(rootFolder)) {
+			return true;
+		}
+		if (matched != historic.size()) {
+			logger.println("*** Files were removed since the last build");
+			return true;
+		}
+		return false;
+	}
+
+	private boolean differs(Folder folder) {
+		for (Item i : folder.getItems(folder.getTypeNames().FILE)) {
+			File f = (File) i;
+			String path = relativize(f.getFullName());
+			int index = historic.indexOf(path);
+			if (index < 0) {
+				logger.println("*** " + path + " was added since the last build");
+				return true;
+			}
+			if (historic.getRevision(index) != f.getRevisionNumber()) {
+				logger.println("*** " + path + " changed since the last build");
+				return true;
+			}
+			matched++;
+		}
+		for (Folder sub : folder.getSubFolders()) {
+			if (differs(sub)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -46,6 +46,10 @@ public class StarTeamPollingActor implements FileCallable<Boolean> {
 
 	private Collection<StarTeamFilePoint> historicFilePoints;
 
+	private final StarTeamFilePointSnapshot historicSnapshot;
+
+	private final StarTeamHighWaterMark highWaterMark;
+
 	/**
 	 * Default constructor.
 	 * @param hostname starteam host name
@@ -62,6 +66,28 @@ public class StarTeamPollingActor implements FileCallable<Boolean> {
 	public StarTeamPollingActor(String hostname, int port, String user,
 			String passwd, String projectname, String viewname,
 			String foldername, StarTeamViewSelector config, TaskListener listener, Collection<StarTeamFilePoint> historicFilePoints) {
+		this(hostname, port, user, passwd, projectname, viewname, foldername, config, listener, null, null);
+		this.historicFilePoints = historicFilePoints;
+	}
+
+	/**
+	 * Constructor for incremental polling.
+	 * @param hostname starteam host name
+	 * @param port  starteam port
+	 * @param user  starteam connection user name 
+	 * @param passwd starteam connection password
+	 * @param projectname starteam project name
+	 * @param viewname  starteam view name
+	 * @param foldername starteam parent folder name
+	 * @param config configuration selector
+	 * @param listener Hudson task listener.
+	 * @param historicSnapshot reference to the file points of the last build, may be null
+	 * @param highWaterMark mark of the last checkout, or null to compare all files
+	 */
+	StarTeamPollingActor(String hostname, int port, String user,
+			String passwd, String projectname, String viewname,
+			String foldername, StarTeamViewSelector config, TaskListener listener, StarTeamFilePointSnapshot historicSnapshot,
+			StarTeamHighWaterMark highWaterMark) {
 		this.hostname = hostname;
 		this.port = port;
 		this.user = user;
@@ -71,7 +97,8 @@ public class StarTeamPollingActor implements FileCallable<Boolean> {
 		this.foldername = foldername;
 		this.listener = listener;
 		this.config = config;
-		this.historicFilePoints=historicFilePoints;
+		this.historicSnapshot = historicSnapshot;
+		this.highWaterMark = highWaterMark;
 	}
 
 	/*
@@ -81,29 +108,47 @@ public class StarTeamPollingActor implements FileCallable<Boolean> {
 	 *      hudson.remoting.VirtualChannel)
 	 */
 	public Boolean invoke(File f, VirtualChannel channel) throws IOException {
+		return poll(f, null);
+	}
 
+	/**
+	 * Polls on the master, against the file points of a workspace of another
+	 * node.
+	 *
+	 * @param workspacePath the workspace the file points were recorded in, as
+	 *        given by the node that recorded them
+	 * @return true if there are changes
+	 */
+	boolean pollRecordedWorkspace(String workspacePath) throws IOException {
+		return poll(new File(workspacePath), workspacePath).booleanValue();
+	}
+
+	private Boolean poll(File f, String workspacePath) throws IOException {
 		StarTeamConnection connection = new StarTeamConnection(
 				hostname, port, user, passwd,
 				projectname, viewname, foldername, config);
 		try {
-			connection.initialize(-1);
+			connection.open(-1);
+			if (highWaterMark != null) {
+				return connection.hasChangesSince(highWaterMark, listener.getLogger());
+			}
+			Collection<StarTeamFilePoint> historic = historicFilePoints;
+			if (historicSnapshot != null) {
+				historic = historicSnapshot.load(f);
+			}
+			if (workspacePath != null) {
+				return connection.hasChanges(workspacePath, historic, listener.getLogger());
+			}
+			return connection.hasChanges(f, historic, listener.getLogger());
 		} catch (StarTeamSCMException e) {
 			listener.getLogger().println(e.getLocalizedMessage());
-			connection.close();
 			return false;
+		} catch (InterruptedException e) {
+			listener.getLogger().println("Polling interrupted");
+			return false;
+		} finally {
+			connection.close();
 		}
-
-		StarTeamChangeSet changeSet = null;
-		try {
-			changeSet = connection.computeChangeSet(connection.getRootFolder(), f, historicFilePoints , listener.getLogger());
-		} catch (StarTeamSCMException e) {
-			e.printStackTrace(listener.getLogger());
-		}
-		connection.close();
-		if (changeSet != null && changeSet.hasChanges()) {
-			return true;
-		}
-		return false;
 	}
 
 }
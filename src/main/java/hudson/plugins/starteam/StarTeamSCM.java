@@ -17,10 +17,13 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.logging.Logger;
 
 import net.sf.json.JSONObject;
 
+import org.apache.commons.io.FileUtils;
+
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -51,9 +54,76 @@ public class StarTeamSCM extends SCM {
 	private final int port;
 	private final String labelname;
 	private final boolean promotionstate;
+	private final boolean incrementalpolling;
+	private final boolean pollwithoutworkspace;
+	private final String foldermappings;
 
 	private final StarTeamViewSelector config;
 	
+	/**
+	 * 
+	 * constructor for a job without the polling options and folder mappings.
+	 * 
+	 * @param hostname
+	 *            starteam host name.
+	 * @param port
+	 *            starteam port name
+	 * @param projectname
+	 *            name of the project
+	 * @param viewname
+	 *            name of the view
+	 * @param foldername
+	 *            parent folder name.
+	 * @param username
+	 *            the user name required to connect to starteam's server
+	 * @param password
+	 *            password required to connect to starteam's server
+	 * @param labelname
+	 *            label name used for polling view contents
+	 * @param promotionstate 
+	 *            indication if label name is actual label name or a promotion state name
+	 *
+	 */
+	public StarTeamSCM(String hostname, int port, String projectname,
+			String viewname, String foldername, String username, String password, String labelname, boolean promotionstate) {
+		this(hostname, port, projectname, viewname, foldername, username, password, labelname, promotionstate, false, false);
+	}
+
+	/**
+	 * 
+	 * constructor for a job without folder mappings.
+	 * 
+	 * @param hostname
+	 *            starteam host name.
+	 * @param port
+	 *            starteam port name
+	 * @param projectname
+	 *            name of the project
+	 * @param viewname
+	 *            name of the view
+	 * @param foldername
+	 *            parent folder name.
+	 * @param username
+	 *            the user name required to connect to starteam's server
+	 * @param password
+	 *            password required to connect to starteam's server
+	 * @param labelname
+	 *            label name used for polling view contents
+	 * @param promotionstate 
+	 *            indication if label name is actual label name or a promotion state name
+	 * @param incrementalpolling
+	 *            poll against the high-water mark of the last checkout instead of comparing all files
+	 * @param pollwithoutworkspace
+	 *            poll on the master, without using the workspace of the job
+	 *
+	 */
+	public StarTeamSCM(String hostname, int port, String projectname,
+			String viewname, String foldername, String username, String password, String labelname, boolean promotionstate,
+			boolean incrementalpolling, boolean pollwithoutworkspace) {
+		this(hostname, port, projectname, viewname, foldername, username, password, labelname, promotionstate,
+				incrementalpolling, pollwithoutworkspace, null);
+	}
+
 	/**
 	 * 
 	 * default stapler constructor.
@@ -76,11 +146,21 @@ public class StarTeamSCM extends SCM {
 	 *            label name used for polling view contents
 	 * @param promotionstate 
 	 *            indication if label name is actual label name or a promotion state name
+	 * @param incrementalpolling
+	 *            poll against the high-water mark of the last checkout instead of comparing all files
+	 * @param pollwithoutworkspace
+	 *            poll on the master, without using the workspace of the job
+	 * @param foldermappings
+	 *            lines of <tt>folder,workspace path</tt> to check out instead of the folder name, may be empty
 	 *
 	 */
 	@DataBoundConstructor
 	public StarTeamSCM(String hostname, int port, String projectname,
-			String viewname, String foldername, String username, String password, String labelname, boolean promotionstate) {
+			String viewname, String foldername, String username, String password, String labelname, boolean promotionstate,
+			boolean incrementalpolling, boolean pollwithoutworkspace, String foldermappings) {
+		this.foldermappings = foldermappings;
+		this.incrementalpolling = incrementalpolling;
+		this.pollwithoutworkspace = pollwithoutworkspace;
 		this.hostname = hostname;
 		this.port = port;
 		this.projectname = projectname;
@@ -121,13 +201,24 @@ public class StarTeamSCM extends SCM {
 	    //create a FilePath to be able to create changelog file on a remote computer.
 	    FilePath changeLogFilePath = new FilePath( changelogFile ) ;
 	    
-	    //create a FilePath to be able to create the filePointFile
-	    FilePath filePointFilePath = new FilePath(new File(build.getRootDir(), StarTeamConnection.FILE_POINT_FILENAME));
+	    //create a FilePath to be able to create the file point files
+	    FilePath buildDirPath = new FilePath(build.getRootDir());
+
+	    List<StarTeamFolderMapping> mappings;
+	    try {
+	        mappings = getFolderMappingList();
+	    } catch (IllegalArgumentException e) {
+	        listener.getLogger().println(e.getMessage());
+	        return false;
+	    }
+
+	    // remember where the file points point to, for polling without the workspace
+	    FileUtils.writeStringToFile(new File(build.getRootDir(), StarTeamConnection.WORKSPACE_FILENAME), workspace.getRemote(), "UTF-8");
 
 	    // Create an actor to do the checkout, possibly on a remote machine
 	    StarTeamCheckoutActor co_actor = new StarTeamCheckoutActor(hostname,
-	            port, user, passwd, projectname, viewname, foldername, config,
-	            changeLogFilePath, listener, build, filePointFilePath);
+	            port, user, passwd, projectname, viewname, mappings, config,
+	            changeLogFilePath, listener, build, buildDirPath);
 	    if (workspace.act(co_actor)) {
 	        // change log is written during checkout (only one pass for
 	        // comparison)
@@ -174,20 +265,60 @@ public class StarTeamSCM extends SCM {
 		boolean status = false;
 		AbstractBuild<?,?> lastBuild = (AbstractBuild<?, ?>) proj.getLastBuild();
 
-		Collection<StarTeamFilePoint> historicFilePoints = null;
-		if(lastBuild!=null){
-			File historicFilePointFile = new File(lastBuild.getRootDir(), StarTeamConnection.FILE_POINT_FILENAME);
-			if(historicFilePointFile.exists()){
-				historicFilePoints = StarTeamFilePointFunctions.loadCollection(historicFilePointFile);
+		String checkoutRoot = null;
+		if (pollwithoutworkspace) {
+			// the actor only needs the path the file points were recorded in,
+			// as the node gave it: it may not be a valid path on the master
+			if (lastBuild != null) {
+				File workspaceFile = new File(lastBuild.getRootDir(), StarTeamConnection.WORKSPACE_FILENAME);
+				if (workspaceFile.exists()) {
+					checkoutRoot = FileUtils.readFileToString(workspaceFile, "UTF-8");
+				}
+			}
+			if (checkoutRoot == null) {
+				checkoutRoot = workspace != null ? workspace.getRemote() : ".";
+			}
+		}
+
+		List<StarTeamFolderMapping> mappings;
+		try {
+			mappings = getFolderMappingList();
+		} catch (IllegalArgumentException e) {
+			listener.getLogger().println(e.getMessage());
+			return false;
+		}
+
+		boolean changed = false;
+		for (StarTeamFolderMapping mapping : mappings) {
+			StarTeamFilePointSnapshot historicFilePoints = null;
+			StarTeamHighWaterMark highWaterMark = null;
+			if (lastBuild != null && incrementalpolling && config == null) {
+				// only views following the tip can be polled incrementally, see StarTeamHighWaterMark
+				highWaterMark = StarTeamHighWaterMark.load(new File(lastBuild.getRootDir(), mapping.getHighWaterMarkFileName()));
+			}
+			if(lastBuild!=null && highWaterMark==null){
+				historicFilePoints = StarTeamFilePointSnapshot.of(lastBuild.getRootDir(), mapping.getFilePointFileName());
+			}
+			
+			// Create an actor to do the polling, possibly on a remote machine
+			StarTeamPollingActor p_actor = new StarTeamPollingActor(hostname, port,
+					user, passwd, projectname, viewname, mapping.getFolderName(),
+					config, listener,
+					historicFilePoints, highWaterMark);
+			if (pollwithoutworkspace) {
+				String mappingRoot = ".".equals(mapping.getPath()) ? checkoutRoot : checkoutRoot + "/" + mapping.getPath();
+				changed = p_actor.pollRecordedWorkspace(mappingRoot);
+			} else if (".".equals(mapping.getPath())) {
+				changed = workspace.act(p_actor);
+			} else {
+				changed = workspace.child(mapping.getPath()).act(p_actor);
+			}
+			if (changed) {
+				// the other folders needn't be compared
+				break;
 			}
 		}
-		
-		// Create an actor to do the polling, possibly on a remote machine
-		StarTeamPollingActor p_actor = new StarTeamPollingActor(hostname, port,
-				user, passwd, projectname, viewname, foldername,
-				config, listener,
-				historicFilePoints);
-		if (workspace.act(p_actor)) {
+		if (changed) {
 			status = true;
 		} else {
 			listener.getLogger().println("StarTeam polling shows no changes");
@@ -195,6 +326,16 @@ public class StarTeamSCM extends SCM {
 		return status;
 	}
 
+	/**
+	 * Polling doesn't need the workspace when it is done on the master.
+	 *
+	 * @see hudson.scm.SCM#requiresWorkspaceForPolling()
+	 */
+	@Override
+	public boolean requiresWorkspaceForPolling() {
+		return !pollwithoutworkspace;
+	}
+
 	/**
 	 * Descriptor class for the SCM class.
 	 *
@@ -226,10 +367,18 @@ public class StarTeamSCM extends SCM {
 			StarTeamSCM scm = null;
 			try {
 				scm = req.bindParameters(StarTeamSCM.class, "starteam.");
-				scms.add(scm);
 			} catch (RuntimeException e) {
 			    LOGGER.log(SEVERE, e.getMessage(), e);
 			}
+			if (scm != null) {
+				try {
+					scm.getFolderMappingList();
+				} catch (IllegalArgumentException e) {
+					throw new FormException(e.getMessage(), "starteam.foldermappings");
+				}
+				// only configurations that were accepted
+				scms.add(scm);
+			}
 			// We don't have working repo browsers yet...
 			// scm.repositoryBrowser = RepositoryBrowsers.createInstance(
 			// StarTeamRepositoryBrowser.class, req, "starteam.browser");
@@ -329,4 +478,39 @@ public class StarTeamSCM extends SCM {
 	public boolean isPromotionstate() {
 		return promotionstate;
 	}
+
+	/**
+	 * Is polling done against the high-water mark of the last checkout?
+	 *
+	 * @return True if polling is incremental.
+	 */
+	public boolean isIncrementalpolling() {
+		return incrementalpolling;
+	}
+
+	/**
+	 * Get the folder mappings, lines of <tt>folder,workspace path</tt>.
+	 *
+	 * @return The folder mappings, empty or null to check out the folder name.
+	 */
+	public String getFoldermappings() {
+		return foldermappings;
+	}
+
+	/**
+	 * @return the folders to check out and where to, the folder name into
+	 *         the workspace if there are no folder mappings.
+	 */
+	List<StarTeamFolderMapping> getFolderMappingList() {
+		return StarTeamFolderMapping.parse(foldername, foldermappings);
+	}
+
+	/**
+	 * Is polling done on the master, without the workspace?
+	 *
+	 * @return True if polling doesn't use the workspace.
+	 */
+	public boolean isPollwithoutworkspace() {
+		return pollwithoutworkspace;
+	}
 }
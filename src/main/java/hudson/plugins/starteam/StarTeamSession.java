@@ -0,0 +1,82 @@
+package hudson.plugins.starteam;
+
+import com.starbase.starteam.Project;
+import com.starbase.starteam.Server;
+import com.starbase.starteam.View;
+
+/**
+ * A logged on StarTeam server together with the project and the unconfigured
+ * view a {@link StarTeamConnection} was resolved to. Sessions outlive
+ * connections: they are handed back to the {@link StarTeamSessionPool} when a
+ * connection is closed.
+ */
+class StarTeamSession {
+
+	private final Server server;
+	private final Project project;
+	private final View view;
+	private volatile long lastUsed = System.currentTimeMillis();
+
+	StarTeamSession(Server server, Project project, View view) {
+		this.server = server;
+		this.project = project;
+		this.view = view;
+	}
+
+	Server getServer() {
+		return server;
+	}
+
+	Project getProject() {
+		return project;
+	}
+
+	/**
+	 * @return the view as found in the project, before any configuration
+	 *         selector is applied.
+	 */
+	View getView() {
+		return view;
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	void touch() {
+		lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Checks that the server still answers. The server may have dropped the
+	 * session while it was idle in the pool.
+	 *
+	 * @return true if the session can be used.
+	 */
+	boolean isAlive() {
+		if (!server.isConnected()) {
+			return false;
+		}
+		try {
+			server.getCurrentTime();
+			return true;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Discards cached project data and disconnects from the server.
+	 */
+	void close() {
+		try {
+			if (server.isConnected()) {
+				view.discard();
+				project.discard();
+				server.disconnect();
+			}
+		} catch (RuntimeException e) {
+			// the session is being thrown away anyway
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package hudson.plugins.starteam;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps logged on {@link StarTeamSession}s of this JVM for reuse, so that a
+ * poll or a build does not pay for a logon and the project and view lookup
+ * each time.
+ * <p>
+ * Sessions are keyed by the server, user, password, project and view of a
+ * connection (see {@link StarTeamConnection#getSessionKey()}), so jobs on
+ * different folders of the same view share them. A session is only ever used by
+ * one connection at a time. Idle sessions are closed after
+ * {@link #IDLE_TIMEOUT} milliseconds, at most {@link #MAX_SESSIONS} idle
+ * sessions are kept, and a session is checked with
+ * {@link StarTeamSession#isAlive()} before it is handed out again.
+ * </p>
+ */
+final class StarTeamSessionPool {
+
+	/**
+	 * Maximum number of idle sessions kept by this JVM. 0 disables pooling.
+	 */
+	static final int MAX_SESSIONS = Integer.getInteger(StarTeamSessionPool.class.getName() + ".maxSessions", 8);
+
+	/**
+	 * Time in milliseconds after which an idle session is closed. Defaults to
+	 * ten minutes.
+	 */
+	static final long IDLE_TIMEOUT = Long.getLong(StarTeamSessionPool.class.getName() + ".idleTimeout", 10L * 60L * 1000L);
+
+	/** idle sessions per session key, most recently used last. */
+	private static final Map<List<Object>, LinkedList<StarTeamSession>> IDLE = new HashMap<List<Object>, LinkedList<StarTeamSession>>();
+
+	private static int idleCount;
+
+	private StarTeamSessionPool() {
+	}
+
+	/**
+	 * Takes an idle session for the given connection out of the pool.
+	 *
+	 * @param connection
+	 *            the connection that wants a session
+	 * @return a live session, or null if a new one has to be opened.
+	 */
+	static StarTeamSession acquire(StarTeamConnection connection) {
+		while (true) {
+			StarTeamSession session;
+			List<StarTeamSession> expired;
+			synchronized (StarTeamSessionPool.class) {
+				expired = removeExpired();
+				LinkedList<StarTeamSession> sessions = IDLE.get(connection.getSessionKey());
+				session = (sessions == null || sessions.isEmpty()) ? null : sessions.removeLast();
+				if (session != null) {
+					idleCount--;
+				}
+			}
+			closeAll(expired);
+			if (session == null || session.isAlive()) {
+				return session;
+			}
+			session.close();
+		}
+	}
+
+	/**
+	 * Hands a session back after the connection using it was closed.
+	 *
+	 * @param connection
+	 *            the connection that used the session
+	 * @param session
+	 *            the session, no longer used by the connection
+	 */
+	static void release(StarTeamConnection connection, StarTeamSession session) {
+		session.touch();
+		List<StarTeamSession> closing;
+		synchronized (StarTeamSessionPool.class) {
+			closing = removeExpired();
+			if (MAX_SESSIONS <= 0) {
+				closing.add(session);
+			} else {
+				if (idleCount >= MAX_SESSIONS) {
+					closing.add(removeLeastRecentlyUsed());
+				}
+				List<Object> key = connection.getSessionKey();
+				LinkedList<StarTeamSession> sessions = IDLE.get(key);
+				if (sessions == null) {
+					sessions = new LinkedList<StarTeamSession>();
+					IDLE.put(key, sessions);
+				}
+				sessions.addLast(session);
+				idleCount++;
+			}
+		}
+		closeAll(closing);
+	}
+
+	/**
+	 * Closes all idle sessions.
+	 */
+	static void clear() {
+		List<StarTeamSession> closing = new ArrayList<StarTeamSession>();
+		synchronized (StarTeamSessionPool.class) {
+			for (List<StarTeamSession> sessions : IDLE.values()) {
+				closing.addAll(sessions);
+			}
+			IDLE.clear();
+			idleCount = 0;
+		}
+		closeAll(closing);
+	}
+
+	static synchronized int getIdleCount() {
+		return idleCount;
+	}
+
+	private static List<StarTeamSession> removeExpired() {
+		List<StarTeamSession> expired = new ArrayList<StarTeamSession>();
+		long now = System.currentTimeMillis();
+		for (Iterator<LinkedList<StarTeamSession>> i = IDLE.values().iterator(); i.hasNext();) {
+			LinkedList<StarTeamSession> sessions = i.next();
+			// sessions are ordered by last use, the oldest ones come first
+			while (!sessions.isEmpty() && now - sessions.getFirst().getLastUsed() > IDLE_TIMEOUT) {
+				expired.add(sessions.removeFirst());
+				idleCount--;
+			}
+			if (sessions.isEmpty()) {
+				i.remove();
+			}
+		}
+		return expired;
+	}
+
+	private static StarTeamSession removeLeastRecentlyUsed() {
+		Map.Entry<List<Object>, LinkedList<StarTeamSession>> oldest = null;
+		for (Map.Entry<List<Object>, LinkedList<StarTeamSession>> entry : IDLE.entrySet()) {
+			if (oldest == null || entry.getValue().getFirst().getLastUsed() < oldest.getValue().getFirst().getLastUsed()) {
+				oldest = entry;
+			}
+		}
+		StarTeamSession session = oldest.getValue().removeFirst();
+		idleCount--;
+		if (oldest.getValue().isEmpty()) {
+			IDLE.remove(oldest.getKey());
+		}
+		return session;
+	}
+
+	private static void closeAll(List<StarTeamSession> sessions) {
+		for (StarTeamSession session : sessions) {
+			session.close();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package hudson.plugins.starteam;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.starbase.starteam.Server;
+import com.starbase.starteam.UserAccount;
+
+/**
+ * Translates StarTeam user IDs into the names used as changelog authors.
+ * <p>
+ * The user accounts of a server are read once and kept in the JVM until the
+ * directory expires (see {@link #TTL}), so resolving the author of every
+ * changed file no longer costs a call to
+ * {@link com.starbase.starteam.ServerAdministration#getUserAccounts()}.
+ * Directories are shared by all connections with the same host, port and
+ * user, because the user determines whether the accounts may be read at all.
+ * </p>
+ */
+final class StarTeamUserDirectory {
+
+	/**
+	 * Time in milliseconds a loaded directory is trusted before the accounts are
+	 * read again. Defaults to one hour.
+	 */
+	static final long TTL = Long.getLong(StarTeamUserDirectory.class.getName() + ".ttl", 60L * 60L * 1000L);
+
+	private static final Map<String, StarTeamUserDirectory> DIRECTORIES = new HashMap<String, StarTeamUserDirectory>();
+
+	private final long created = System.currentTimeMillis();
+
+	/** user ID -> resolved name, filled lazily. */
+	private final Map<Integer, String> userNames = new ConcurrentHashMap<Integer, String>();
+
+	/** user full name -> logon name, or null if the accounts can't be read. */
+	private Map<String, String> logOnNames;
+
+	private boolean loaded;
+
+	private StarTeamUserDirectory() {
+	}
+
+	/**
+	 * @param key
+	 *            identity of the server and of the user reading it
+	 * @return the directory for the given key, a new one if there is none yet or
+	 *         the previous one has expired
+	 */
+	static synchronized StarTeamUserDirectory get(String key) {
+		StarTeamUserDirectory directory = DIRECTORIES.get(key);
+		if (directory == null || directory.isExpired()) {
+			directory = new StarTeamUserDirectory();
+			DIRECTORIES.put(key, directory);
+		}
+		return directory;
+	}
+
+	/**
+	 * Drops all cached directories.
+	 */
+	static synchronized void clear() {
+		DIRECTORIES.clear();
+	}
+
+	boolean isExpired() {
+		return System.currentTimeMillis() - created > TTL;
+	}
+
+	/**
+	 * @param server
+	 *            a logged on server, used only if the user is not known yet
+	 * @param userId
+	 *            the id of the user on the StarTeam Server
+	 * @return the logon name of the user, its full name if the user accounts
+	 *         can't be read, or "unknown" if no account matches
+	 */
+	String getUsername(Server server, int userId) {
+		Integer key = Integer.valueOf(userId);
+		String userName = userNames.get(key);
+		if (userName == null) {
+			userName = resolve(server, userId);
+			userNames.put(key, userName);
+		}
+		return userName;
+	}
+
+	private String resolve(Server server, int userId) {
+		String userName = server.getUser(userId).getName();
+		Map<String, String> accounts = getLogOnNames(server);
+		if (accounts == null) {
+			// Since the user account running the build does not have user admin perms
+			// use the User Full Name
+			return userName;
+		}
+		String logOnName = accounts.get(userName);
+		if (logOnName != null) {
+			System.out.println("INFO: From \'" + userName + "\' found existing user LogonName = " + logOnName
+					+ " with ID \'" + userId + "\'");
+			return logOnName;
+		}
+		return "unknown";
+	}
+
+	private synchronized Map<String, String> getLogOnNames(Server server) {
+		if (!loaded) {
+			loaded = true;
+			try {
+				UserAccount[] userAccts = server.getAdministration().getUserAccounts();
+				Map<String, String> result = new HashMap<String, String>();
+				for (UserAccount ua : userAccts) {
+					// the first account with a given name wins, as the linear scan did
+					if (!result.containsKey(ua.getName())) {
+						result.put(ua.getName(), ua.getLogOnName());
+					}
+				}
+				logOnNames = result;
+			} catch (Exception e) {
+				// Looks like this user does not have the permission "Administer User Accounts"
+				// on the StarTeam Server. Defaulting to just using User Full Names.
+				logOnNames = null;
+			}
+		}
+		return logOnNames;
+	}
+}
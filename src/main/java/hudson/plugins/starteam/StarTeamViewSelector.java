@@ -84,6 +84,19 @@ public class StarTeamViewSelector implements Serializable {
 	}
 
 	public View configView(View baseView, int buildNumber) throws StarTeamSCMException, ParseException{
+		return new View(baseView, createConfiguration(baseView, buildNumber));
+	}
+
+	/**
+	 * Resolves the configuration of the view. A label given as a pattern is
+	 * created here, so the result should be kept if more than one view with
+	 * this configuration is needed.
+	 *
+	 * @param baseView the view to configure
+	 * @param buildNumber a job build number, or -1 if not associated with a job.
+	 * @return the view configuration selected by this selector
+	 */
+	public ViewConfiguration createConfiguration(View baseView, int buildNumber) throws StarTeamSCMException, ParseException{
 		final ViewConfiguration configuration;
 
 		if (configInfo != null && !configInfo.isEmpty()) {
@@ -129,7 +142,7 @@ public class StarTeamViewSelector implements Serializable {
 		} else {
 			configuration = ViewConfiguration.createTip();
 		}
-		return new View(baseView, configuration);
+		return configuration;
 	}
 
 	public static String expandLabelPattern(final String labelformat, final int buildNumber) {
@@ -144,12 +157,7 @@ public class StarTeamViewSelector implements Serializable {
 	}
 
 	private static int findLabelInView(final View view, final String labelname) throws StarTeamSCMException {
-		for (Label label : view.getLabels()) {
-			if (labelname.equals(label.getName())) {
-				return label.getID();
-			}
-		}
-		throw new StarTeamSCMException("Couldn't find label [" + labelname + "] in view " + view.getName());
+		return StarTeamLabelDirectory.get(view).findLabel(view, labelname);
 	}
 
 	private static int createLabelInView(final View view, final String labelName, final int buildNumber) throws StarTeamSCMException {
@@ -0,0 +1,168 @@
+package hudson.plugins.starteam;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lists all files below a directory, optionally reading several directories
+ * at the same time.
+ * <p>
+ * Every entry of a directory is first checked with {@link File#isFile()},
+ * so files, the bulk of a workspace, cost one check; the others are checked
+ * with {@link File#isDirectory()}. With more than one thread, every
+ * directory found is handed to a pool, so large subtrees are read in
+ * parallel, which pays off on network file systems where each directory
+ * read waits for the server.
+ * </p>
+ * <p>
+ * The number of threads is taken from the system property
+ * <tt>hudson.plugins.starteam.StarTeamWorkspaceScanner.threads</tt> and
+ * defaults to 4.
+ * </p>
+ */
+final class StarTeamWorkspaceScanner {
+
+	static final int THREADS = Integer.getInteger(StarTeamWorkspaceScanner.class.getName() + ".threads", 4);
+
+	private final List<File> result = new ArrayList<File>();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private volatile RuntimeException failure;
+	private ExecutorService pool;
+
+	private StarTeamWorkspaceScanner() {
+	}
+
+	/**
+	 * @param dir
+	 *            the directory to list
+	 * @param threads
+	 *            number of directories to read at the same time
+	 * @return all files below the directory, in no particular order. The
+	 *         directory itself if it is a file, nothing if it doesn't exist.
+	 *         If the calling thread is interrupted, the files found so far.
+	 */
+	static Collection<File> listAllFiles(File dir, int threads) {
+		StarTeamWorkspaceScanner scanner = new StarTeamWorkspaceScanner();
+		if (!dir.isDirectory()) {
+			if (dir.exists()) {
+				scanner.result.add(dir);
+			}
+		} else if (threads <= 1) {
+			scanner.scan(dir);
+		} else {
+			return scanner.scanInParallel(dir, threads);
+		}
+		return scanner.result;
+	}
+
+	/**
+	 * Lists a tree on the calling thread.
+	 */
+	private void scan(File dir) {
+		List<File> files = new ArrayList<File>();
+		List<File> dirs = new ArrayList<File>();
+		read(dir, files, dirs);
+		result.addAll(files);
+		for (File sub : dirs) {
+			scan(sub);
+		}
+	}
+
+	private Collection<File> scanInParallel(File dir, int threads) {
+		pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "StarTeam workspace scanner " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			submit(dir);
+			finished.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			synchronized (result) {
+				// the pool may still be adding files
+				return new ArrayList<File>(result);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return result;
+	}
+
+	private void submit(final File dir) {
+		pending.incrementAndGet();
+		try {
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						if (failure == null) {
+							List<File> files = new ArrayList<File>();
+							List<File> dirs = new ArrayList<File>();
+							read(dir, files, dirs);
+							synchronized (result) {
+								result.addAll(files);
+							}
+							for (File sub : dirs) {
+								submit(sub);
+							}
+						}
+					} catch (RuntimeException e) {
+						fail(e);
+					} finally {
+						done();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the pool was shut down because the scan was interrupted
+			done();
+		}
+	}
+
+	private void done() {
+		if (pending.decrementAndGet() == 0) {
+			finished.countDown();
+		}
+	}
+
+	private synchronized void fail(RuntimeException e) {
+		if (failure == null) {
+			failure = e;
+		}
+		finished.countDown();
+	}
+
+	/**
+	 * Reads the entries of a directory. Entries that are neither files nor
+	 * directories, such as broken links, are left out.
+	 */
+	private static void read(File dir, List<File> files, List<File> dirs) {
+		File[] entries = dir.listFiles();
+		if (entries == null) {
+			return;
+		}
+		for (File f : entries) {
+			if (f.isFile()) {
+				files.add(f);
+			} else if (f.isDirectory()) {
+				dirs.add(f);
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StarTeamChangeLogBuilderTest {
+
+	private static final long NOW = 1280000000000L;
+
+	private static StarTeamChangeLogEntry entry(String fileName, long seconds, String user, String msg) {
+		return entry(fileName, 1, seconds, user, msg);
+	}
+
+	private static StarTeamChangeLogEntry entry(String fileName, int revision, long seconds, String user, String msg) {
+		return new StarTeamChangeLogEntry(fileName, revision, new Date(NOW + seconds * 1000), user, msg, "change");
+	}
+
+	@Test
+	public void filesCheckedInTogetherAreGrouped() {
+		List<StarTeamChangeLogEntry> changes = Arrays.asList(
+				entry("a.txt", 0, "jdoe", "fix"),
+				entry("b.txt", 5, "other", "fix"),
+				entry("c.txt", 30, "jdoe", "fix"),
+				entry("d.txt", 600, "jdoe", "fix"),
+				entry("e.txt", 55, "jdoe", "fix"));
+
+		List<StarTeamChangeLogEntry> grouped = new ArrayList<StarTeamChangeLogEntry>(StarTeamChangeLogBuilder.group(changes, 60000));
+
+		assertEquals(3, grouped.size());
+		assertEquals(Arrays.asList("a.txt", "c.txt", "e.txt"), grouped.get(0).getAffectedPaths());
+		assertEquals("a.txt", grouped.get(0).getFileName());
+		assertEquals(new Date(NOW + 55000), grouped.get(0).getDate());
+		assertTrue(grouped.get(0).isGrouped());
+		assertSame(changes.get(1), grouped.get(1));
+		assertSame(changes.get(3), grouped.get(2));
+		assertFalse(grouped.get(2).isGrouped());
+	}
+
+	@Test
+	public void windowIsMeasuredFromTheFirstEntryOfAGroup() {
+		List<StarTeamChangeLogEntry> changes = Arrays.asList(
+				entry("a.txt", 0, "jdoe", "fix"),
+				entry("b.txt", 50, "jdoe", "fix"),
+				entry("c.txt", 100, "jdoe", "fix"),
+				entry("d.txt", 150, "jdoe", "fix"));
+
+		List<StarTeamChangeLogEntry> grouped = new ArrayList<StarTeamChangeLogEntry>(StarTeamChangeLogBuilder.group(changes, 60000));
+
+		assertEquals(2, grouped.size());
+		assertEquals(Arrays.asList("a.txt", "b.txt"), grouped.get(0).getAffectedPaths());
+		assertEquals(Arrays.asList("c.txt", "d.txt"), grouped.get(1).getAffectedPaths());
+	}
+
+	@Test
+	public void filesOfTheSameNameAreToldApartByTheirPath() {
+		StarTeamChangeLogEntry first = entry("Foo.java", 0, "jdoe", "fix");
+		first.setPath("a/Foo.java");
+		StarTeamChangeLogEntry second = entry("Foo.java", 10, "jdoe", "fix");
+		second.setPath("b/Foo.java");
+
+		List<StarTeamChangeLogEntry> grouped = new ArrayList<StarTeamChangeLogEntry>(StarTeamChangeLogBuilder.group(Arrays.asList(first, second), 60000));
+
+		assertEquals(1, grouped.size());
+		assertEquals("Foo.java", grouped.get(0).getFileName());
+		assertEquals(Arrays.asList("a/Foo.java", "b/Foo.java"), grouped.get(0).getAffectedPaths());
+	}
+
+	@Test
+	public void negativeWindowKeepsOneEntryPerFile() {
+		List<StarTeamChangeLogEntry> changes = Arrays.asList(entry("a.txt", 0, "jdoe", "fix"), entry("b.txt", 0, "jdoe", "fix"));
+		assertSame(changes, StarTeamChangeLogBuilder.group(changes, -1));
+	}
+
+	@Test
+	public void affectedPathsAreWrittenAndParsed() throws Exception {
+		StarTeamChangeSet changeSet = new StarTeamChangeSet();
+		changeSet.addChange(entry("a & b.txt", 4, 0, "jdoe", "fix"));
+		changeSet.addChange(entry("c.txt", 7, 1, "jdoe", "fix"));
+		changeSet.addChange(entry("single.txt", 2, "other", "other fix"));
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		StarTeamChangeLogBuilder.writeChangeLog(os, changeSet);
+
+		String xml = os.toString("UTF-8");
+		assertEquals(1, xml.split("<affectedPaths>").length - 1);
+
+		Collection<StarTeamChangeLogEntry> parsed = StarTeamChangeLogParser.parse(null, new ByteArrayInputStream(os.toByteArray())).getHistory();
+		assertEquals(2, parsed.size());
+		StarTeamChangeLogEntry grouped = parsed.iterator().next();
+		assertEquals("a & b.txt", grouped.getFileName());
+		assertEquals("jdoe", grouped.getUsername());
+		assertEquals(Arrays.asList("a & b.txt", "c.txt"), grouped.getAffectedPaths());
+		assertEquals(Arrays.asList(4, 7), grouped.getAffectedRevisions());
+	}
+
+	@Test
+	public void initialImportIsOneEntry() throws Exception {
+		StarTeamChangeSet changeSet = new StarTeamChangeSet();
+		changeSet.addChange(StarTeamChangeLogEntry.initialImport("View\\", Arrays.asList("src", "doc"), 3000, 3 * 1024 * 1024, new Date(NOW)));
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		StarTeamChangeLogBuilder.writeChangeLog(os, changeSet);
+
+		Collection<StarTeamChangeLogEntry> parsed = StarTeamChangeLogParser.parse(null, new ByteArrayInputStream(os.toByteArray())).getHistory();
+		assertEquals(1, parsed.size());
+		StarTeamChangeLogEntry entry = parsed.iterator().next();
+		assertEquals("View\\", entry.getFileName());
+		assertEquals("import", entry.getChangeType());
+		assertEquals("Initial import of 3000 files (3 MB) in src, doc", entry.getMsg());
+		assertEquals(Arrays.asList("src", "doc"), entry.getAffectedPaths());
+	}
+}
@@ -106,4 +106,36 @@ public class StarTeamChangeLogParserTest {
 		Assert.assertFalse(it.hasNext());
 	}
 	
+	@Test
+	public void testParseEmptyLog() throws IOException, SAXException {
+		InputStream aChangeLogStream = new ByteArrayInputStream("<log/>".getBytes("UTF-8")) ;
+		ChangeLogSet res = StarTeamChangeLogParser.parse(null , aChangeLogStream);
+		Assert.assertTrue( res.isEmptySet() ) ;
+	}
+
+	@Test
+	public void testParseEscapedTextAndUnknownElements() throws IOException, SAXException {
+		String contents =
+					"<?xml version='1.0' encoding='UTF-8'?>\n" +
+					"<changelog>\n" +
+					"	<entry>\n" +
+					"		<fileName>a&amp;b.txt</fileName>\n" +
+					"		<revisionNumber>1</revisionNumber>\n" +
+					"		<unknown><nested>x</nested></unknown>\n" +
+					"		<message><![CDATA[fixed <b>]]> &lt;again&gt;</message>\n" +
+					"		<changeType>added</changeType>\n" +
+					"	</entry>\n" +
+					"	<entry>\n" +
+					"		<fileName>second.txt</fileName>\n" +
+					"	</entry>\n" +
+					"</changelog>\n";
+		StarTeamChangeLogSet res = StarTeamChangeLogParser.parse(null , new ByteArrayInputStream(contents.getBytes("UTF-8")));
+		Assert.assertEquals(2, res.getHistory().size());
+		StarTeamChangeLogEntry entry = res.getHistory().get(0);
+		Assert.assertEquals("a&b.txt", entry.getFileName() ) ;
+		Assert.assertEquals("fixed <b> <again>", entry.getMsg() ) ;
+		Assert.assertEquals("added", entry.getChangeType() ) ;
+		Assert.assertEquals("second.txt", res.getHistory().get(1).getFileName() ) ;
+	}
+	
 }
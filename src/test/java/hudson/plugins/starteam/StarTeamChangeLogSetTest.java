@@ -0,0 +1,99 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StarTeamChangeLogSetTest {
+
+	private static final int SIZE = 2 * StarTeamChangeLogSet.PAGE_SIZE + 50;
+
+	private File changelogFile;
+
+	@Before
+	public void setUp() throws IOException {
+		File dir = new File("hudson-temp-directory");
+		dir.mkdirs();
+		changelogFile = new File(dir, "changelog.xml");
+
+		StarTeamChangeSet changeSet = new StarTeamChangeSet();
+		Date date = new Date();
+		for (int i = 0; i < SIZE; i++) {
+			changeSet.addChange(new StarTeamChangeLogEntry("File" + i + ".java", i, date, "user",
+					"Fix <issue> \u00e9 #" + i, "change"));
+		}
+		OutputStream os = new FileOutputStream(changelogFile);
+		OutputStream index = new FileOutputStream(StarTeamChangeLogIndex.indexFile(changelogFile));
+		try {
+			StarTeamChangeLogBuilder.writeChangeLog(os, index, changeSet);
+		} finally {
+			os.close();
+			index.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		changelogFile.delete();
+		StarTeamChangeLogIndex.indexFile(changelogFile).delete();
+	}
+
+	@Test
+	public void indexedChangeLogIsReadAPageAtATime() throws Exception {
+		StarTeamChangeLogSet set = (StarTeamChangeLogSet) new StarTeamChangeLogParser().parse(null, changelogFile);
+
+		assertFalse(set.isEmptySet());
+		assertEquals(SIZE, set.getSize());
+		assertEquals(3, set.getPageCount());
+		List<StarTeamChangeLogEntry> last = set.getPage(2);
+		assertEquals(50, last.size());
+		assertEquals("File" + (SIZE - 1) + ".java", last.get(49).getFileName());
+		assertEquals("Fix <issue> \u00e9 #" + (SIZE - 1), last.get(49).getMsg());
+		assertEquals(StarTeamChangeLogSet.PAGE_SIZE, set.getPage(0).size());
+		assertTrue(set.getPage(3).isEmpty());
+
+		int i = 0;
+		for (Iterator<StarTeamChangeLogEntry> it = set.iterator(); it.hasNext(); i++) {
+			assertEquals(i, it.next().getRevisionNumber());
+		}
+		assertEquals(SIZE, i);
+	}
+
+	@Test
+	public void changeLogThatDoesNotMatchItsIndexIsReadAtOnce() throws Exception {
+		assertNotNull(StarTeamChangeLogIndex.load(changelogFile));
+		FileUtils.writeStringToFile(changelogFile, FileUtils.readFileToString(changelogFile, "UTF-8")
+				.replace("File1.java", "Renamed1.java"), "UTF-8");
+		assertNull(StarTeamChangeLogIndex.load(changelogFile));
+
+		StarTeamChangeLogSet set = (StarTeamChangeLogSet) new StarTeamChangeLogParser().parse(null, changelogFile);
+		assertEquals(SIZE, set.getHistory().size());
+		assertEquals("Renamed1.java", set.getHistory().get(1).getFileName());
+	}
+
+	@Test
+	public void pageParameterIsChecked() throws Exception {
+		StarTeamChangeLogSet set = (StarTeamChangeLogSet) new StarTeamChangeLogParser().parse(null, changelogFile);
+		assertEquals(2, set.toPage("2"));
+		assertEquals(0, set.toPage("3"));
+		assertEquals(0, set.toPage("-1"));
+		assertEquals(0, set.toPage("x"));
+		assertEquals(0, set.toPage(null));
+		assertEquals(2 * StarTeamChangeLogSet.PAGE_SIZE, set.getPageStart(2));
+	}
+}
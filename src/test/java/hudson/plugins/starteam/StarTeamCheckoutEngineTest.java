@@ -0,0 +1,186 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.starbase.starteam.CheckoutEvent;
+import com.starbase.starteam.CheckoutListener;
+import com.starbase.starteam.CheckoutManager;
+import com.starbase.starteam.File;
+import com.starbase.starteam.Item;
+import com.starbase.starteam.ItemList;
+import com.starbase.starteam.Status;
+
+@RunWith(JMock.class)
+public class StarTeamCheckoutEngineTest {
+	private Mockery mockery = new Mockery() {{ setImposteriser(ClassImposteriser.INSTANCE); }};
+
+	private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+	private File file(final String name, final int status) {
+		final File f = mockery.mock(File.class, name);
+		mockery.checking(new Expectations() {{
+			allowing(f).getStatus(); will(returnValue(status));
+			allowing(f).getFullName(); will(returnValue(new java.io.File("hudson-temp-directory", name).getPath()));
+			allowing(f).getItemID(); will(returnValue(name.hashCode()));
+		}});
+		return f;
+	}
+
+	@Test
+	public void onlyFilesThatAreNotCurrentAreCheckedOut() throws Exception {
+		final File outOfDate = file("outofdate.txt", Status.OUTOFDATE);
+		final File current = file("current.txt", Status.CURRENT);
+		final File modified = file("modified.txt", Status.MODIFIED);
+		mockery.checking(new Expectations() {{
+			one(outOfDate).checkout(Item.LockType.UNCHANGED, true, true, true);
+			never(current).checkout(Item.LockType.UNCHANGED, true, true, true);
+			one(modified).checkout(Item.LockType.UNCHANGED, true, true, true);
+		}});
+
+		StarTeamCheckoutEngine engine = new StarTeamCheckoutEngine(null, new PrintStream(log), false, 1, false);
+		List<File> dirty = engine.checkOut(Arrays.asList(outOfDate, current, modified));
+
+		assertEquals(Arrays.asList(modified), dirty);
+		String output = log.toString();
+		assertTrue(output.indexOf("outofdate.txt... ok") < output.indexOf("modified.txt... ok"));
+	}
+
+	@Test
+	public void failureStopsCheckout() throws Exception {
+		final File broken = file("broken.txt", Status.MISSING);
+		final File next = file("next.txt", Status.MISSING);
+		mockery.checking(new Expectations() {{
+			one(broken).checkout(Item.LockType.UNCHANGED, true, true, true); will(throwException(new IOException("disk full")));
+			never(next).checkout(Item.LockType.UNCHANGED, true, true, true);
+		}});
+
+		StarTeamCheckoutEngine engine = new StarTeamCheckoutEngine(null, new PrintStream(log), false, 1, false);
+		try {
+			engine.checkOut(Arrays.asList(broken, next));
+			fail("the failure should be reported");
+		} catch (IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+		assertTrue(log.toString().contains("Problem checking out file: " + new java.io.File("hudson-temp-directory", "broken.txt").getPath()));
+	}
+
+	@Test
+	public void filesLeftByBatchAreCheckedOutOneByOne() throws Exception {
+		final File done = file("done.txt", Status.MISSING);
+		final File left = file("left.txt", Status.MODIFIED);
+		final StarTeamConnection connection = mockery.mock(StarTeamConnection.class);
+		final CheckoutManager manager = mockery.mock(CheckoutManager.class);
+		final CheckoutEvent event = mockery.mock(CheckoutEvent.class);
+		final CheckoutListener[] listener = new CheckoutListener[1];
+		mockery.checking(new Expectations() {{
+			one(connection).createCheckoutManager(); will(returnValue(manager));
+			one(manager).addCheckoutListener(with(any(CheckoutListener.class))); will(new CustomAction("remember listener") {
+				public Object invoke(Invocation invocation) {
+					listener[0] = (CheckoutListener) invocation.getParameter(0);
+					return null;
+				}
+			});
+			allowing(event).isSuccessful(); will(returnValue(true));
+			allowing(event).getCurrentFile(); will(returnValue(done));
+			one(manager).checkout(with(any(ItemList.class))); will(new CustomAction("check out first file") {
+				public Object invoke(Invocation invocation) {
+					listener[0].onNotifyProgress(event);
+					return null;
+				}
+			});
+			never(done).checkout(Item.LockType.UNCHANGED, true, true, true);
+			one(left).checkout(Item.LockType.UNCHANGED, true, true, true);
+		}});
+
+		StarTeamCheckoutEngine engine = new StarTeamCheckoutEngine(connection, new PrintStream(log), false, 1, true);
+		List<File> dirty = engine.checkOut(Arrays.asList(done, left));
+
+		assertEquals(Arrays.asList(left), dirty);
+		String output = log.toString();
+		assertTrue(output.contains("done.txt... ok"));
+		assertTrue(output.contains("[1] files left by the batch"));
+		assertTrue(output.contains("left.txt... ok"));
+	}
+
+	@Test
+	public void pipelineWithoutSessionsChecksOutWhenFinished() throws Exception {
+		final File outOfDate = file("outofdate.txt", Status.OUTOFDATE);
+		final File current = file("current.txt", Status.CURRENT);
+		final File modified = file("modified.txt", Status.MODIFIED);
+		final StarTeamConnection connection = mockery.mock(StarTeamConnection.class);
+		mockery.checking(new Expectations() {{
+			one(connection).openWorker(); will(throwException(new StarTeamSCMException("no more sessions")));
+			one(outOfDate).checkout(Item.LockType.UNCHANGED, true, true, true);
+			never(current).checkout(Item.LockType.UNCHANGED, true, true, true);
+			one(modified).checkout(Item.LockType.UNCHANGED, true, true, true);
+		}});
+
+		StarTeamCheckoutEngine engine = new StarTeamCheckoutEngine(connection, new PrintStream(log), false, 1, false);
+		engine.start();
+		engine.offer(outOfDate);
+		engine.offer(current);
+		engine.offer(modified);
+		List<File> dirty = engine.finish(false);
+
+		assertEquals(Arrays.asList(modified), dirty);
+		String output = log.toString();
+		assertTrue(output.contains("Could not open checkout session: no more sessions"));
+		assertTrue(output.indexOf("outofdate.txt... ok") < output.indexOf("modified.txt... ok"));
+	}
+
+	@Test
+	public void pipelineDecidesOnQuietModeWhenFinished() throws Exception {
+		final File outOfDate = file("outofdate.txt", Status.OUTOFDATE);
+		final StarTeamConnection connection = mockery.mock(StarTeamConnection.class);
+		mockery.checking(new Expectations() {{
+			one(connection).openWorker(); will(throwException(new StarTeamSCMException("no more sessions")));
+			one(outOfDate).checkout(Item.LockType.UNCHANGED, true, true, true);
+		}});
+
+		StarTeamCheckoutEngine engine = new StarTeamCheckoutEngine(connection, new PrintStream(log), false, 1, false);
+		engine.start();
+		engine.offer(outOfDate);
+		engine.finish(true);
+
+		assertFalse(log.toString().contains("outofdate.txt"));
+	}
+
+	@Test
+	public void pipelineTurnsQuietOnceEnoughFilesWereListed() throws Exception {
+		final File current = file("current.txt", Status.CURRENT);
+		final File outOfDate = file("outofdate.txt", Status.OUTOFDATE);
+		final StarTeamConnection connection = mockery.mock(StarTeamConnection.class);
+		mockery.checking(new Expectations() {{
+			one(connection).openWorker(); will(throwException(new StarTeamSCMException("no more sessions")));
+			one(outOfDate).checkout(Item.LockType.UNCHANGED, true, true, true);
+		}});
+
+		StarTeamCheckoutEngine engine = new StarTeamCheckoutEngine(connection, new PrintStream(log), false, 1, false);
+		engine.start();
+		for (int i = 0; i < StarTeamCheckoutEngine.QUIET_FILES; i++) {
+			engine.offer(current);
+		}
+		engine.offer(outOfDate);
+		engine.finish(false);
+
+		assertFalse(log.toString().contains("outofdate.txt"));
+	}
+}
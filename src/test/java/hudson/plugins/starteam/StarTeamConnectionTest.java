@@ -3,6 +3,7 @@ package hudson.plugins.starteam;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.matchers.JUnitMatchers.containsString;
 
@@ -20,7 +21,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import com.starbase.starteam.DuplicateServerListEntryException;
+import com.starbase.starteam.Project;
+import com.starbase.starteam.Server;
 import com.starbase.starteam.ServerInfo;
+import com.starbase.starteam.View;
 
 /**
  * @author John McNair <john@mcnair.org>
@@ -162,4 +166,114 @@ public class StarTeamConnectionTest {
 		StarTeamConnection connection = new StarTeamConnection("host", 1234, "user", "passwd", "project", "view", "folder", null);
 		connection.populateDescription(serverInfoMock);
 	}
+
+	@Test
+	public void projectIsReopenedById() throws Exception {
+		final Server server = mockery.mock(Server.class);
+		final Project project = mockery.mock(Project.class);
+		mockery.checking(new Expectations() {{
+			allowing(server).getAddress(); will(returnValue("reopen-host"));
+			allowing(server).getPort(); will(returnValue(49201));
+			allowing(project).getName(); will(returnValue("project"));
+			allowing(project).getID(); will(returnValue(42));
+			one(server).getProjects(); will(returnValue(new Project[] { project }));
+			one(server).findProject(42); will(returnValue(project));
+		}});
+
+		assertSame(project, StarTeamConnection.findProjectOnServer(server, "user", "project"));
+		assertSame(project, StarTeamConnection.findProjectOnServer(server, "user", "project"));
+	}
+
+	@Test
+	public void projectIdIsNotSharedBetweenUsers() throws Exception {
+		final Server server = mockery.mock(Server.class);
+		final Project project = mockery.mock(Project.class);
+		mockery.checking(new Expectations() {{
+			allowing(server).getAddress(); will(returnValue("users-host"));
+			allowing(server).getPort(); will(returnValue(49201));
+			allowing(project).getName(); will(returnValue("project"));
+			allowing(project).getID(); will(returnValue(42));
+			exactly(2).of(server).getProjects(); will(returnValue(new Project[] { project }));
+		}});
+
+		assertSame(project, StarTeamConnection.findProjectOnServer(server, "user", "project"));
+		assertSame(project, StarTeamConnection.findProjectOnServer(server, "other", "project"));
+	}
+
+	@Test
+	public void projectIsSearchedAgainWhenTheIdFails() throws Exception {
+		final Server server = mockery.mock(Server.class);
+		final Project project = mockery.mock(Project.class);
+		mockery.checking(new Expectations() {{
+			allowing(server).getAddress(); will(returnValue("failing-host"));
+			allowing(server).getPort(); will(returnValue(49201));
+			allowing(project).getName(); will(returnValue("project"));
+			allowing(project).getID(); will(returnValue(42));
+			exactly(2).of(server).getProjects(); will(returnValue(new Project[] { project }));
+			one(server).findProject(42); will(returnValue(null));
+		}});
+
+		assertSame(project, StarTeamConnection.findProjectOnServer(server, "user", "project"));
+		assertSame(project, StarTeamConnection.findProjectOnServer(server, "user", "project"));
+	}
+
+	private View view(final Project project, final Server server, final String host) {
+		final View view = mockery.mock(View.class);
+		mockery.checking(new Expectations() {{
+			allowing(project).getServer(); will(returnValue(server));
+			allowing(project).getID(); will(returnValue(42));
+			allowing(server).getAddress(); will(returnValue(host));
+			allowing(server).getPort(); will(returnValue(49201));
+			allowing(view).getName(); will(returnValue("view"));
+			allowing(view).getID(); will(returnValue(7));
+		}});
+		return view;
+	}
+
+	@Test
+	public void viewIsReopenedById() throws Exception {
+		final Server server = mockery.mock(Server.class);
+		final Project project = mockery.mock(Project.class);
+		final View view = view(project, server, "reopen-view-host");
+		mockery.checking(new Expectations() {{
+			one(project).getAccessibleViews(); will(returnValue(new View[] { view }));
+			one(project).findView(7); will(returnValue(view));
+		}});
+
+		assertSame(view, StarTeamConnection.findViewInProject(project, "user", "view"));
+		assertSame(view, StarTeamConnection.findViewInProject(project, "user", "view"));
+	}
+
+	@Test
+	public void viewIdIsNotSharedBetweenUsers() throws Exception {
+		final Server server = mockery.mock(Server.class);
+		final Project project = mockery.mock(Project.class);
+		final View view = view(project, server, "users-view-host");
+		mockery.checking(new Expectations() {{
+			exactly(2).of(project).getAccessibleViews(); will(returnValue(new View[] { view }));
+		}});
+
+		assertSame(view, StarTeamConnection.findViewInProject(project, "user", "view"));
+		assertSame(view, StarTeamConnection.findViewInProject(project, "other", "view"));
+	}
+
+	@Test
+	public void viewIsSearchedAgainWhenTheIdFails() throws Exception {
+		final Server server = mockery.mock(Server.class);
+		final Project project = mockery.mock(Project.class);
+		final View view = view(project, server, "failing-view-host");
+		final View renamed = mockery.mock(View.class, "renamed");
+		mockery.checking(new Expectations() {{
+			allowing(renamed).getName(); will(returnValue("renamed"));
+			exactly(3).of(project).getAccessibleViews(); will(returnValue(new View[] { view }));
+			one(project).findView(7); will(returnValue(null));
+			one(project).findView(7); will(returnValue(renamed));
+		}});
+
+		assertSame(view, StarTeamConnection.findViewInProject(project, "user", "view"));
+		// the view with the cached ID is gone
+		assertSame(view, StarTeamConnection.findViewInProject(project, "user", "view"));
+		// the cached ID now belongs to a view of another name
+		assertSame(view, StarTeamConnection.findViewInProject(project, "user", "view"));
+	}
 }
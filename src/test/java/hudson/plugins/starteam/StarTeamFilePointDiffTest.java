@@ -0,0 +1,66 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StarTeamFilePointDiffTest {
+
+	private static List<String> diff(final StarTeamFilePointTable current, final StarTeamFilePointTable historic) {
+		final List<String> events = new ArrayList<String>();
+		StarTeamFilePointDiff.diff(current, historic, new StarTeamFilePointDiff.Listener() {
+			public void added(int c) {
+				events.add("added " + current.getPath(c));
+			}
+
+			public void removed(int h) {
+				events.add("removed " + historic.getPath(h));
+			}
+
+			public void changed(int c, int h) {
+				events.add("changed " + current.getPath(c));
+			}
+
+			public void rolledBack(int c, int h) {
+				events.add("rollback " + current.getPath(c));
+			}
+		});
+		return events;
+	}
+
+	@Test
+	public void differencesAreReportedInPathOrder() {
+		StarTeamFilePointTable current = new StarTeamFilePointTable.Builder()
+				.add("/ws/a.txt", 1)
+				.add("/ws/src/new.txt", 1)
+				.add("/ws/src/changed.txt", 3)
+				.add("/ws/src/old.txt", 1)
+				.add("/ws/z/same.txt", 7)
+				.build();
+		StarTeamFilePointTable historic = new StarTeamFilePointTable.Builder()
+				.add("/ws/a.txt", 1)
+				.add("/ws/gone/x.txt", 1)
+				.add("/ws/src/changed.txt", 2)
+				.add("/ws/src/old.txt", 2)
+				.add("/ws/z/same.txt", 7)
+				.add("/ws/zz/last.txt", 1)
+				.build();
+		assertEquals(Arrays.asList(
+				"removed /ws/gone/x.txt",
+				"changed /ws/src/changed.txt",
+				"added /ws/src/new.txt",
+				"rollback /ws/src/old.txt",
+				"removed /ws/zz/last.txt"), diff(current, historic));
+	}
+
+	@Test
+	public void emptyHistoryAddsEverything() {
+		StarTeamFilePointTable current = new StarTeamFilePointTable.Builder().add("/ws/a.txt", 1).add("/ws/b/c.txt", 1).build();
+		assertEquals(Arrays.asList("added /ws/a.txt", "added /ws/b/c.txt"), diff(current, StarTeamFilePointTable.of(null)));
+		assertEquals(Arrays.asList("removed /ws/a.txt", "removed /ws/b/c.txt"), diff(StarTeamFilePointTable.of(null), current));
+	}
+}
@@ -0,0 +1,119 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StarTeamFilePointFunctionsTest {
+
+	private File buildDir;
+
+	@Before
+	public void setUp() throws IOException {
+		buildDir = File.createTempFile("starteam-build", "");
+		buildDir.delete();
+		buildDir.mkdir();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(buildDir);
+	}
+
+	private static List<StarTeamFilePoint> filePoints(int count) {
+		List<StarTeamFilePoint> result = new ArrayList<StarTeamFilePoint>();
+		for (int i = 0; i < count; i++) {
+			result.add(new StarTeamFilePoint("/workspace/job/src/main/java/pkg" + (i / 10) + "/File" + i + ".java", i % 7));
+		}
+		return result;
+	}
+
+	private static void assertSameFilePoints(Collection<StarTeamFilePoint> expected, Collection<StarTeamFilePoint> actual) {
+		assertEquals(expected.size(), actual.size());
+		// loaded file points come sorted by path
+		Iterator<StarTeamFilePoint> i = actual.iterator();
+		for (StarTeamFilePoint fp : StarTeamFilePointTable.of(expected)) {
+			StarTeamFilePoint other = i.next();
+			assertEquals(fp.getFullfilepath(), other.getFullfilepath());
+			assertEquals(fp.getRevisionNumber(), other.getRevisionNumber());
+		}
+	}
+
+	@Test
+	public void binaryFilePointsAreLoadedBack() throws IOException {
+		List<StarTeamFilePoint> filePoints = filePoints(1000);
+		OutputStream os = new FileOutputStream(new File(buildDir, StarTeamConnection.FILE_POINT_FILENAME));
+		try {
+			StarTeamFilePointFunctions.storeCollection(os, filePoints);
+		} finally {
+			os.close();
+		}
+		assertSameFilePoints(filePoints, StarTeamFilePointFunctions.loadFilePoints(buildDir));
+	}
+
+	@Test
+	public void legacyCsvIsReadWithoutRewritingIt() throws IOException {
+		File csv = new File(buildDir, StarTeamConnection.LEGACY_FILE_POINT_FILENAME);
+		String content = "3,/workspace/a.txt\n12,/workspace/dir,with,commas/b.txt\n";
+		FileUtils.writeStringToFile(csv, content, "ISO-8859-1");
+		assertTrue(csv.setLastModified(1000L));
+
+		List<StarTeamFilePoint> expected = new ArrayList<StarTeamFilePoint>();
+		expected.add(new StarTeamFilePoint("/workspace/a.txt", 3));
+		expected.add(new StarTeamFilePoint("/workspace/dir,with,commas/b.txt", 12));
+		assertSameFilePoints(expected, StarTeamFilePointFunctions.loadFilePoints(buildDir));
+		assertEquals(content, FileUtils.readFileToString(csv, "ISO-8859-1"));
+		assertEquals(1000L, csv.lastModified());
+	}
+
+	@Test
+	public void buildWithoutFilePoints() throws IOException {
+		assertNull(StarTeamFilePointFunctions.loadFilePoints(buildDir));
+	}
+
+	@Test
+	public void orphansAreHistoricFilesMissingFromTheView() {
+		File workspace = new File(buildDir, "workspace");
+		String root = workspace.getAbsolutePath() + File.separator;
+		List<StarTeamFilePoint> historic = new ArrayList<StarTeamFilePoint>();
+		historic.add(new StarTeamFilePoint(root + "kept.txt", 1));
+		historic.add(new StarTeamFilePoint(root + "src" + File.separator + "removed.txt", 1));
+		historic.add(new StarTeamFilePoint(new File(buildDir, "elsewhere.txt").getAbsolutePath(), 1));
+		List<StarTeamFilePoint> current = new ArrayList<StarTeamFilePoint>();
+		current.add(new StarTeamFilePoint(root + "kept.txt", 2));
+		current.add(new StarTeamFilePoint(root + "added.txt", 1));
+
+		Collection<File> orphans = StarTeamFilePointFunctions.listOrphans(workspace, current, historic);
+
+		assertEquals(1, orphans.size());
+		assertEquals(new File(root + "src" + File.separator + "removed.txt"), orphans.iterator().next());
+	}
+
+	@Test
+	public void orphansAreFoundIfTheWorkspaceWasRecordedWithAnotherCase() {
+		File workspace = new File(buildDir, "workspace");
+		String recordedRoot = workspace.getAbsolutePath().toUpperCase() + File.separator;
+		List<StarTeamFilePoint> historic = new ArrayList<StarTeamFilePoint>();
+		historic.add(new StarTeamFilePoint(recordedRoot + "removed.txt", 1));
+
+		Collection<File> orphans = StarTeamFilePointFunctions.listOrphans(workspace, new ArrayList<StarTeamFilePoint>(), historic);
+
+		// the same directory only where file names ignore case
+		boolean sameWorkspace = new File(recordedRoot).equals(workspace);
+		assertEquals(sameWorkspace ? 1 : 0, orphans.size());
+	}
+}
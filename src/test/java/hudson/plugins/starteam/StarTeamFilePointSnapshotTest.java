@@ -0,0 +1,76 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StarTeamFilePointSnapshotTest {
+
+	private File buildDir;
+	private final File workspace = new File("workspace");
+
+	@Before
+	public void setUp() throws IOException {
+		StarTeamFilePointSnapshot.clear();
+		buildDir = File.createTempFile("starteam-build", "");
+		buildDir.delete();
+		buildDir.mkdir();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		StarTeamFilePointSnapshot.clear();
+		FileUtils.deleteDirectory(buildDir);
+	}
+
+	private File store(int revision) throws IOException {
+		File file = new File(buildDir, StarTeamConnection.FILE_POINT_FILENAME);
+		OutputStream os = new FileOutputStream(file);
+		try {
+			StarTeamFilePointFunctions.storeCollection(os, Arrays.asList(new StarTeamFilePoint("/ws/a.txt", revision)));
+		} finally {
+			os.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void buildWithoutFilePoints() throws IOException {
+		assertNull(StarTeamFilePointSnapshot.of(buildDir));
+	}
+
+	@Test
+	public void filePointsAreReadOnceAndThenTakenFromTheCache() throws Exception {
+		File file = store(1);
+		StarTeamFilePointSnapshot snapshot = StarTeamFilePointSnapshot.of(buildDir);
+		assertEquals(1, snapshot.load(workspace).iterator().next().getRevisionNumber());
+
+		// the cached copy is used while the digest matches
+		assertTrue(file.delete());
+		Collection<StarTeamFilePoint> cached = snapshot.load(workspace);
+		assertEquals(1, cached.iterator().next().getRevisionNumber());
+	}
+
+	@Test
+	public void staleCacheIsReplaced() throws Exception {
+		store(1);
+		StarTeamFilePointSnapshot.of(buildDir).load(workspace);
+
+		store(2);
+		StarTeamFilePointSnapshot snapshot = StarTeamFilePointSnapshot.of(buildDir);
+		assertNull(StarTeamFilePointSnapshot.get(workspace, snapshot.getDigest()));
+		assertEquals(2, snapshot.load(workspace).iterator().next().getRevisionNumber());
+	}
+}
@@ -0,0 +1,89 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StarTeamFilePointTableTest {
+
+	private static StarTeamFilePointTable table() {
+		return new StarTeamFilePointTable.Builder()
+				.add("/ws/src/b.txt", 2)
+				.add("/ws/a.txt", 1)
+				.add("/ws/src/a.txt", 3)
+				.add("C:\\ws\\win.txt", 4)
+				.build();
+	}
+
+	@Test
+	public void pathsAreFound() {
+		StarTeamFilePointTable table = table();
+		assertEquals(4, table.size());
+		for (String path : Arrays.asList("/ws/src/b.txt", "/ws/a.txt", "/ws/src/a.txt", "C:\\ws\\win.txt")) {
+			int index = table.indexOf(path);
+			assertEquals(path, table.getPath(index));
+		}
+		assertEquals(3, table.getRevision(table.indexOf("/ws/src/a.txt")));
+		assertEquals("win.txt", table.getName(table.indexOf("C:\\ws\\win.txt")));
+		assertEquals(-1, table.indexOf("/ws/src/c.txt"));
+		assertEquals(-1, table.indexOf("/ws/other/a.txt"));
+		assertEquals(-1, table.indexOf("/ws/src/a.tx"));
+	}
+
+	@Test
+	public void iterationIsSortedByDirectoryThenName() {
+		List<String> paths = new ArrayList<String>();
+		for (StarTeamFilePoint fp : table()) {
+			paths.add(fp.getFullfilepath() + "@" + fp.getRevisionNumber());
+		}
+		assertEquals(Arrays.asList("/ws/a.txt@1", "/ws/src/a.txt@3", "/ws/src/b.txt@2", "C:\\ws\\win.txt@4"), paths);
+	}
+
+	@Test
+	public void pathsAreComparedLikeFiles() {
+		StarTeamFilePointTable table = new StarTeamFilePointTable.Builder()
+				.add("/ws/Src/A.txt", 1)
+				.add("/ws/src/b.txt", 2)
+				.build();
+		boolean sameFile = new java.io.File("/ws/Src/A.txt").equals(new java.io.File("/ws/src/a.txt"));
+		assertEquals(sameFile, table.indexOf("/ws/src/a.txt") >= 0);
+		assertEquals(sameFile ? 2 : 1, table.dirEnd(0));
+		assertEquals(Integer.signum(new java.io.File("/ws/Src/A.txt").compareTo(new java.io.File("/ws/src/b.txt"))),
+				Integer.signum(StarTeamFilePointTable.comparePaths("/ws/Src/A.txt", "/ws/src/b.txt")));
+	}
+
+	@Test
+	public void lastRevisionOfADuplicatePathWins() {
+		StarTeamFilePointTable table = new StarTeamFilePointTable.Builder()
+				.add("/ws/a.txt", 1)
+				.add("/ws/a.txt", 5)
+				.build();
+		assertEquals(1, table.size());
+		assertEquals(5, table.getRevision(table.indexOf("/ws/a.txt")));
+	}
+
+	@Test
+	public void emptyTable() {
+		StarTeamFilePointTable table = StarTeamFilePointTable.of(null);
+		assertEquals(0, table.size());
+		assertEquals(-1, table.indexOf("/ws/a.txt"));
+	}
+
+	@Test
+	public void tableIsSerializable() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(table());
+		out.close();
+		StarTeamFilePointTable copy = (StarTeamFilePointTable) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(2, copy.getRevision(copy.indexOf("/ws/src/b.txt")));
+	}
+}
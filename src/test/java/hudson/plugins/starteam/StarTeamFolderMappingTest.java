@@ -0,0 +1,97 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StarTeamFolderMappingTest {
+
+	@Test
+	public void withoutMappingsTheFolderGoesToTheWorkspace() {
+		List<StarTeamFolderMapping> mappings = StarTeamFolderMapping.parse("View/src", " \n");
+		assertEquals(1, mappings.size());
+		StarTeamFolderMapping mapping = mappings.get(0);
+		assertEquals("View/src", mapping.getFolderName());
+		File workspace = new File("workspace");
+		assertEquals(workspace, mapping.getWorkspace(workspace));
+		assertEquals(StarTeamConnection.FILE_POINT_FILENAME, mapping.getFilePointFileName());
+		assertEquals(StarTeamConnection.HIGH_WATER_MARK_FILENAME, mapping.getHighWaterMarkFileName());
+	}
+
+	@Test
+	public void mappingsKeepTheirOrderAndOwnFiles() {
+		List<StarTeamFolderMapping> mappings = StarTeamFolderMapping.parse("View", "View/zlib, lib\nView/app,app\n\nView/doc,docs");
+		assertEquals(3, mappings.size());
+		assertEquals("View/zlib", mappings.get(0).getFolderName());
+		assertEquals("View/app", mappings.get(1).getFolderName());
+		assertEquals("View/doc", mappings.get(2).getFolderName());
+
+		File workspace = new File("workspace");
+		assertEquals(new File(workspace, "lib"), mappings.get(0).getWorkspace(workspace));
+		assertEquals(new File(workspace, "app"), mappings.get(1).getWorkspace(workspace));
+		assertEquals(new File(workspace, "docs"), mappings.get(2).getWorkspace(workspace));
+
+		assertFalse(mappings.get(0).getFilePointFileName().equals(mappings.get(1).getFilePointFileName()));
+		assertFalse(mappings.get(1).getFilePointFileName().equals(StarTeamConnection.FILE_POINT_FILENAME));
+		assertEquals(mappings.get(2).getFilePointFileName(), StarTeamFolderMapping.of("View/doc", "docs").getFilePointFileName());
+	}
+
+	@Test
+	public void aSingleMappingMayUseTheWholeWorkspace() {
+		List<StarTeamFolderMapping> mappings = StarTeamFolderMapping.parse("View", "View/app");
+		File workspace = new File("workspace");
+		assertEquals(workspace, mappings.get(0).getWorkspace(workspace));
+	}
+
+	@Test
+	public void pathsAreNormalized() {
+		assertEquals("", StarTeamFolderMapping.normalize("."));
+		assertEquals("lib/zlib", StarTeamFolderMapping.normalize("./lib\\zlib/"));
+	}
+
+	@Test
+	public void spellingsOfAPathKeepTheSameFiles() {
+		String files = StarTeamFolderMapping.of("View/app", "app").getFilePointFileName();
+		assertEquals(files, StarTeamFolderMapping.of("View/app", "./app").getFilePointFileName());
+		assertEquals(files, StarTeamFolderMapping.of("View/app", "app/").getFilePointFileName());
+		assertEquals(StarTeamFolderMapping.of("View/app", ".").getHighWaterMarkFileName(),
+				StarTeamFolderMapping.of("View/app", "./").getHighWaterMarkFileName());
+	}
+
+	@Test
+	public void foldersMappedTwiceAreRejected() {
+		assertRejected("View/app,app\nView/app,other");
+		assertRejected("View/app,app\nview\\app\\,other");
+	}
+
+	@Test
+	public void pathsOutsideTheWorkspaceAreRejected() {
+		assertRejected("View/app,/tmp/app");
+		assertRejected("View/app,C:\\app");
+		assertRejected("View/app,../app");
+		assertRejected("View/app,lib/../../app");
+	}
+
+	@Test
+	public void overlappingPathsAreRejected() {
+		assertRejected("View/zlib,lib\nView/app");
+		assertRejected("View/zlib,lib\nView/app,.");
+		assertRejected("View/zlib,lib/zlib\nView/lib,lib");
+		assertRejected("View/zlib,lib\nView/lib,./Lib/");
+		StarTeamFolderMapping.parse("View", "View/zlib,lib/zlib\nView/lib,libs");
+	}
+
+	private static void assertRejected(String foldermappings) {
+		try {
+			StarTeamFolderMapping.parse("View", foldermappings);
+			fail(foldermappings + " should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StarTeamFunctionsTest {
+
+	@Test
+	public void pathSegmentsAcceptBothSeparators() {
+		assertArrayEquals(new String[] { "View", "src", "main" }, StarTeamFunctions.pathSegments("View\\src/main/"));
+		assertArrayEquals(new String[] { "src" }, StarTeamFunctions.pathSegments("/src"));
+	}
+
+	@Test
+	public void folderIsAtPathWithOrWithoutRootFolder() {
+		String[] hierarchy = StarTeamFunctions.pathSegments("View\\src\\main\\");
+		assertTrue(StarTeamFunctions.isAtPath(hierarchy, StarTeamFunctions.pathSegments("view/SRC/main")));
+		assertTrue(StarTeamFunctions.isAtPath(hierarchy, StarTeamFunctions.pathSegments("src/main")));
+		assertFalse(StarTeamFunctions.isAtPath(hierarchy, StarTeamFunctions.pathSegments("main")));
+		assertFalse(StarTeamFunctions.isAtPath(hierarchy, StarTeamFunctions.pathSegments("View/src/test")));
+		assertFalse(StarTeamFunctions.isAtPath(hierarchy, StarTeamFunctions.pathSegments("View/src/main/java")));
+	}
+}
@@ -0,0 +1,85 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.starbase.starteam.File;
+import com.starbase.starteam.Folder;
+import com.starbase.util.OLEDate;
+
+@RunWith(JMock.class)
+public class StarTeamHighWaterMarkTest {
+	private Mockery mockery = new Mockery() {{ setImposteriser(ClassImposteriser.INSTANCE); }};
+
+	private File file(final String name, final int itemId, final long modifiedTime) {
+		return file(name, itemId, 1, modifiedTime);
+	}
+
+	private File file(final String name, final int itemId, final int folderId, final long modifiedTime) {
+		final File f = mockery.mock(File.class, name);
+		final Folder parent = mockery.mock(Folder.class, name + "-parent");
+		final OLEDate date = mockery.mock(OLEDate.class, name + "-date");
+		mockery.checking(new Expectations() {{
+			allowing(f).getItemID(); will(returnValue(itemId));
+			allowing(f).getParentFolder(); will(returnValue(parent));
+			allowing(parent).getItemID(); will(returnValue(folderId));
+			allowing(f).getModifiedTime(); will(returnValue(date));
+			allowing(date).getLongValue(); will(returnValue(modifiedTime));
+		}});
+		return f;
+	}
+
+	@Test
+	public void markHoldsLatestModificationAndFileCount() {
+		StarTeamHighWaterMark mark = StarTeamHighWaterMark.compute(Arrays.asList(file("a", 3, 1000L), file("b", 4, 5000L), file("c", 5, 2000L)));
+		assertEquals(5000L, mark.getModifiedTime());
+		assertEquals(3, mark.getFileCount());
+		assertEquals(40, mark.getDigest().length());
+	}
+
+	@Test
+	public void digestDependsOnIdsAndFoldersButNotOnOrder() {
+		String digest = StarTeamHighWaterMark.digest(Arrays.asList(file("a", 3, 1, 0L), file("b", 5, 1, 0L)));
+		assertEquals(digest, StarTeamHighWaterMark.digest(Arrays.asList(file("b2", 5, 1, 0L), file("a2", 3, 1, 0L))));
+		// same count and item ID sum
+		assertFalse(digest.equals(StarTeamHighWaterMark.digest(Arrays.asList(file("c", 2, 1, 0L), file("d", 6, 1, 0L)))));
+		// moved to another folder
+		assertFalse(digest.equals(StarTeamHighWaterMark.digest(Arrays.asList(file("e", 3, 2, 0L), file("f", 5, 1, 0L)))));
+	}
+
+	@Test
+	public void storedMarkIsLoadedBack() throws Exception {
+		java.io.File file = java.io.File.createTempFile("starteam-highwatermark", ".csv");
+		try {
+			OutputStream os = new FileOutputStream(file);
+			try {
+				new StarTeamHighWaterMark(123456789L, 42, "0123456789abcdef0123456789abcdef01234567").store(os);
+			} finally {
+				os.close();
+			}
+			StarTeamHighWaterMark mark = StarTeamHighWaterMark.load(file);
+			assertEquals(123456789L, mark.getModifiedTime());
+			assertEquals(42, mark.getFileCount());
+			assertEquals("0123456789abcdef0123456789abcdef01234567", mark.getDigest());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void missingMarkIsNull() {
+		assertNull(StarTeamHighWaterMark.load(new java.io.File("does-not-exist.csv")));
+	}
+}
@@ -0,0 +1,72 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.starbase.starteam.Label;
+import com.starbase.starteam.View;
+
+@RunWith(JMock.class)
+public class StarTeamLabelDirectoryTest {
+	private Mockery mockery = new Mockery() {{ setImposteriser(ClassImposteriser.INSTANCE); }};
+
+	private View viewMock;
+	private Label releaseMock;
+	private Label nightlyMock;
+
+	@Before
+	public void setUp() {
+		StarTeamLabelDirectory.clear();
+		viewMock = mockery.mock(View.class);
+		releaseMock = mockery.mock(Label.class, "release");
+		nightlyMock = mockery.mock(Label.class, "nightly");
+	}
+
+	@Test
+	public void labelsAreReadOnce() throws Exception {
+		mockery.checking(new Expectations() {{
+			one(viewMock).getLabels(); will(returnValue(new Label[] { releaseMock, nightlyMock }));
+			allowing(releaseMock).getName(); will(returnValue("release"));
+			allowing(releaseMock).getID(); will(returnValue(1));
+			allowing(nightlyMock).getName(); will(returnValue("nightly"));
+			allowing(nightlyMock).getID(); will(returnValue(2));
+		}});
+
+		StarTeamLabelDirectory directory = StarTeamLabelDirectory.get("host:1:10");
+		assertEquals(1, directory.findLabel(viewMock, "release"));
+		assertEquals(2, directory.findLabel(viewMock, "nightly"));
+		assertEquals(1, StarTeamLabelDirectory.get("host:1:10").findLabel(viewMock, "release"));
+	}
+
+	@Test
+	public void unknownLabelReadsTheLabelsAgain() throws Exception {
+		mockery.checking(new Expectations() {{
+			one(viewMock).getLabels(); will(returnValue(new Label[] { releaseMock }));
+			one(viewMock).getLabels(); will(returnValue(new Label[] { releaseMock, nightlyMock }));
+			one(viewMock).getLabels(); will(returnValue(new Label[] { releaseMock, nightlyMock }));
+			allowing(viewMock).getName(); will(returnValue("view"));
+			allowing(releaseMock).getName(); will(returnValue("release"));
+			allowing(releaseMock).getID(); will(returnValue(1));
+			allowing(nightlyMock).getName(); will(returnValue("nightly"));
+			allowing(nightlyMock).getID(); will(returnValue(2));
+		}});
+
+		StarTeamLabelDirectory directory = StarTeamLabelDirectory.get("host:1:10");
+		assertEquals(1, directory.findLabel(viewMock, "release"));
+		assertEquals(2, directory.findLabel(viewMock, "nightly"));
+		try {
+			directory.findLabel(viewMock, "missing");
+			fail("missing label should not be found");
+		} catch (StarTeamSCMException e) {
+			assertEquals("Couldn't find label [missing] in view view", e.getMessage());
+		}
+	}
+}
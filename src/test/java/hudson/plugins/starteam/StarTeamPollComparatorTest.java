@@ -0,0 +1,112 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.starbase.starteam.File;
+import com.starbase.starteam.Folder;
+import com.starbase.starteam.Item;
+import com.starbase.starteam.Type;
+import com.starbase.starteam.TypeNames;
+
+@RunWith(JMock.class)
+public class StarTeamPollComparatorTest {
+	private Mockery mockery = new Mockery() {{ setImposteriser(ClassImposteriser.INSTANCE); }};
+
+	private final PrintStream logger = new PrintStream(new ByteArrayOutputStream());
+
+	private File file(final String name, final int revision) {
+		final File f = mockery.mock(File.class, name);
+		mockery.checking(new Expectations() {{
+			allowing(f).getFullName(); will(returnValue(path(name)));
+			allowing(f).getRevisionNumber(); will(returnValue(revision));
+		}});
+		return f;
+	}
+
+	private Folder folder(String name, final Item[] files, final Folder... subFolders) {
+		final Folder folder = mockery.mock(Folder.class, name);
+		final TypeNames typeNames = mockery.mock(TypeNames.class, name + "-types");
+		mockery.checking(new Expectations() {{
+			allowing(folder).getTypeNames(); will(returnValue(typeNames));
+			allowing(folder).getItems(with(any(Type.class))); will(returnValue(files));
+			allowing(folder).getSubFolders(); will(returnValue(subFolders));
+		}});
+		return folder;
+	}
+
+	private static String path(String name) {
+		return new java.io.File("hudson-temp-directory", name).getPath();
+	}
+
+	private static Collection<StarTeamFilePoint> filePoints(Object... pathAndRevision) {
+		Collection<StarTeamFilePoint> result = new ArrayList<StarTeamFilePoint>();
+		for (int i = 0; i < pathAndRevision.length; i += 2) {
+			result.add(new StarTeamFilePoint(path((String) pathAndRevision[i]), (Integer) pathAndRevision[i + 1]));
+		}
+		return result;
+	}
+
+	@Test
+	public void unchangedFolderHasNoChanges() {
+		Folder sub = folder("sub", new Item[] { file("b.txt", 2) });
+		Folder root = folder("root", new Item[] { file("a.txt", 1) }, sub);
+		assertFalse(new StarTeamPollComparator(filePoints("a.txt", 1, "b.txt", 2), logger).hasChanges(root));
+	}
+
+	@Test
+	public void walkStopsAtFirstChangedRevision() {
+		Folder sub = mockery.mock(Folder.class, "sub");
+		Folder root = folder("root", new Item[] { file("a.txt", 2) }, sub);
+		// sub is never looked at
+		assertTrue(new StarTeamPollComparator(filePoints("a.txt", 1, "b.txt", 2), logger).hasChanges(root));
+	}
+
+	@Test
+	public void addedAndRemovedFilesAreChanges() {
+		Folder added = folder("added", new Item[] { file("a.txt", 1), file("new.txt", 1) });
+		assertTrue(new StarTeamPollComparator(filePoints("a.txt", 1), logger).hasChanges(added));
+
+		Folder removed = folder("removed", new Item[] { file("b.txt", 1) });
+		assertTrue(new StarTeamPollComparator(filePoints("b.txt", 1, "gone.txt", 3), logger).hasChanges(removed));
+	}
+
+	@Test
+	public void pathsRecordedOnAnotherNodeAreComparedRelativeToItsWorkspace() {
+		final File a = mockery.mock(File.class, "a");
+		final File b = mockery.mock(File.class, "b");
+		mockery.checking(new Expectations() {{
+			allowing(a).getFullName(); will(returnValue("C:\\ws\\job/a.txt"));
+			allowing(a).getRevisionNumber(); will(returnValue(1));
+			allowing(b).getFullName(); will(returnValue("C:\\ws\\job/src/b.txt"));
+			allowing(b).getRevisionNumber(); will(returnValue(2));
+		}});
+		Folder sub = folder("sub", new Item[] { b });
+		Folder root = folder("root", new Item[] { a }, sub);
+		Collection<StarTeamFilePoint> recorded = Arrays.asList(
+				new StarTeamFilePoint("C:\\ws\\job\\a.txt", 1),
+				new StarTeamFilePoint("C:\\ws\\job\\src\\b.txt", 2));
+		assertFalse(new StarTeamPollComparator(recorded, "C:\\ws\\job\\", logger).hasChanges(root));
+	}
+
+	@Test
+	public void withoutHistoryAnyFileIsAChange() {
+		Folder root = folder("root", new Item[] { file("a.txt", 1) });
+		assertTrue(new StarTeamPollComparator(null, logger).hasChanges(root));
+		Folder empty = folder("empty", new Item[0]);
+		assertFalse(new StarTeamPollComparator(Arrays.<StarTeamFilePoint>asList(), logger).hasChanges(empty));
+	}
+}
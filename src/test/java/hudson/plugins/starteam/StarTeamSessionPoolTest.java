@@ -0,0 +1,85 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JMock.class)
+public class StarTeamSessionPoolTest {
+	private Mockery mockery = new Mockery() {{ setImposteriser(ClassImposteriser.INSTANCE); }};
+
+	private StarTeamSession sessionMock;
+
+	private final StarTeamConnection connection = new StarTeamConnection("host", 1234, "user", "passwd", "project", "view", "folder", null);
+
+	@Before
+	public void setUp() {
+		StarTeamSessionPool.clear();
+		sessionMock = mockery.mock(StarTeamSession.class);
+		mockery.checking(new Expectations() {{
+			allowing(sessionMock).touch();
+			allowing(sessionMock).getLastUsed(); will(returnValue(System.currentTimeMillis()));
+		}});
+	}
+
+	@Test
+	public void emptyPool() {
+		assertNull(StarTeamSessionPool.acquire(connection));
+	}
+
+	@Test
+	public void liveSessionIsReused() {
+		mockery.checking(new Expectations() {{
+			one(sessionMock).isAlive(); will(returnValue(true));
+		}});
+		StarTeamSessionPool.release(connection, sessionMock);
+		assertEquals(1, StarTeamSessionPool.getIdleCount());
+
+		StarTeamConnection sameIdentity = new StarTeamConnection("host", 1234, "user", "passwd", "project", "view", "folder", null);
+		assertSame(sessionMock, StarTeamSessionPool.acquire(sameIdentity));
+		assertEquals(0, StarTeamSessionPool.getIdleCount());
+	}
+
+	@Test
+	public void sessionIsNotSharedAcrossIdentities() {
+		mockery.checking(new Expectations() {{
+			one(sessionMock).close();
+		}});
+		StarTeamSessionPool.release(connection, sessionMock);
+
+		StarTeamConnection otherView = new StarTeamConnection("host", 1234, "user", "passwd", "project", "other", "folder", null);
+		assertNull(StarTeamSessionPool.acquire(otherView));
+		StarTeamConnection otherPassword = new StarTeamConnection("host", 1234, "user", "other", "project", "view", "folder", null);
+		assertNull(StarTeamSessionPool.acquire(otherPassword));
+		StarTeamSessionPool.clear();
+	}
+
+	@Test
+	public void sessionIsSharedAcrossFolders() {
+		mockery.checking(new Expectations() {{
+			one(sessionMock).isAlive(); will(returnValue(true));
+		}});
+		StarTeamSessionPool.release(connection, sessionMock);
+
+		StarTeamConnection otherFolder = new StarTeamConnection("host", 1234, "user", "passwd", "project", "view", "other", null);
+		assertSame(sessionMock, StarTeamSessionPool.acquire(otherFolder));
+	}
+
+	@Test
+	public void deadSessionIsClosed() {
+		mockery.checking(new Expectations() {{
+			one(sessionMock).isAlive(); will(returnValue(false));
+			one(sessionMock).close();
+		}});
+		StarTeamSessionPool.release(connection, sessionMock);
+		assertNull(StarTeamSessionPool.acquire(connection));
+	}
+}
@@ -0,0 +1,71 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.starbase.starteam.Server;
+import com.starbase.starteam.ServerAdministration;
+import com.starbase.starteam.User;
+import com.starbase.starteam.UserAccount;
+
+@RunWith(JMock.class)
+public class StarTeamUserDirectoryTest {
+	private Mockery mockery = new Mockery() {{ setImposteriser(ClassImposteriser.INSTANCE); }};
+
+	private Server serverMock;
+	private ServerAdministration adminMock;
+	private User johnMock;
+	private User janeMock;
+	private UserAccount johnAccountMock;
+
+	@Before
+	public void setUp() {
+		StarTeamUserDirectory.clear();
+		serverMock = mockery.mock(Server.class);
+		adminMock = mockery.mock(ServerAdministration.class);
+		johnMock = mockery.mock(User.class, "john");
+		janeMock = mockery.mock(User.class, "jane");
+		johnAccountMock = mockery.mock(UserAccount.class);
+	}
+
+	@Test
+	public void accountsAreReadOnce() {
+		mockery.checking(new Expectations() {{
+			one(serverMock).getUser(1); will(returnValue(johnMock));
+			one(serverMock).getUser(2); will(returnValue(janeMock));
+			allowing(johnMock).getName(); will(returnValue("John Doe"));
+			allowing(janeMock).getName(); will(returnValue("Jane Doe"));
+			one(serverMock).getAdministration(); will(returnValue(adminMock));
+			one(adminMock).getUserAccounts(); will(returnValue(new UserAccount[] { johnAccountMock }));
+			allowing(johnAccountMock).getName(); will(returnValue("John Doe"));
+			allowing(johnAccountMock).getLogOnName(); will(returnValue("jdoe"));
+		}});
+
+		StarTeamUserDirectory directory = StarTeamUserDirectory.get("host:1:user");
+		assertEquals("jdoe", directory.getUsername(serverMock, 1));
+		assertEquals("jdoe", directory.getUsername(serverMock, 1));
+		assertEquals("unknown", directory.getUsername(serverMock, 2));
+		assertEquals("jdoe", StarTeamUserDirectory.get("host:1:user").getUsername(serverMock, 1));
+	}
+
+	@Test
+	public void fullNameIsUsedWithoutAccountPermission() {
+		mockery.checking(new Expectations() {{
+			one(serverMock).getUser(1); will(returnValue(johnMock));
+			allowing(johnMock).getName(); will(returnValue("John Doe"));
+			one(serverMock).getAdministration(); will(returnValue(adminMock));
+			one(adminMock).getUserAccounts(); will(throwException(new RuntimeException("no permission")));
+		}});
+
+		StarTeamUserDirectory directory = StarTeamUserDirectory.get("host:1:user");
+		assertEquals("John Doe", directory.getUsername(serverMock, 1));
+		assertEquals("John Doe", directory.getUsername(serverMock, 1));
+	}
+}
@@ -0,0 +1,62 @@
+package hudson.plugins.starteam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StarTeamWorkspaceScannerTest {
+
+	private File workspace;
+	private final Set<File> expected = new HashSet<File>();
+
+	@Before
+	public void setUp() throws IOException {
+		workspace = new File("hudson-temp-directory", "scan").getAbsoluteFile();
+		FileUtils.deleteDirectory(workspace);
+		for (int i = 0; i < 200; i++) {
+			File f = new File(workspace, "d" + (i % 7) + File.separator + "e" + (i % 3) + File.separator + "f" + i + ".txt");
+			f.getParentFile().mkdirs();
+			f.createNewFile();
+			expected.add(f);
+		}
+		File top = new File(workspace, "top.txt");
+		top.createNewFile();
+		expected.add(top);
+		new File(workspace, "empty").mkdir();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workspace);
+	}
+
+	@Test
+	public void sequentialScanListsAllFiles() {
+		assertEquals(expected, new HashSet<File>(StarTeamWorkspaceScanner.listAllFiles(workspace, 1)));
+	}
+
+	@Test
+	public void parallelScanListsAllFiles() {
+		assertEquals(expected, new HashSet<File>(StarTeamWorkspaceScanner.listAllFiles(workspace, 4)));
+		assertEquals(expected.size(), StarTeamWorkspaceScanner.listAllFiles(workspace, 4).size());
+	}
+
+	@Test
+	public void fileAndMissingDirectory() {
+		File top = new File(workspace, "top.txt");
+		assertEquals(Arrays.asList(top), StarTeamWorkspaceScanner.listAllFiles(top, 4));
+		assertTrue(StarTeamWorkspaceScanner.listAllFiles(new File(workspace, "missing"), 4).isEmpty());
+		assertEquals(Collections.emptyList(), StarTeamWorkspaceScanner.listAllFiles(new File(workspace, "empty"), 4));
+	}
+}